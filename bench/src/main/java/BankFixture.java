@@ -0,0 +1,34 @@
+import benchmarks.Fixtures;
+
+/**
+ * The bank benchmarks: a bank with one account per synthetic owner.
+ */
+public class BankFixture implements Fixtures.Bank {
+    private final SyntheticData data = new SyntheticData(13);
+    private TheBank bank;
+    private String[] owners;
+    private String[] cards;
+
+    @Override
+    public void fill(int accounts) {
+        bank = new TheBank();
+        owners = new String[accounts];
+        cards = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            BankAccount b = data.account(i);
+            owners[i] = b.getAccountOwnerId();
+            cards[i] = b.getCardNumber();
+            bank.addBankAccount(b);
+        }
+    }
+
+    @Override
+    public boolean searchForUser(int account) {
+        return bank.searchForUser(owners[account]) != null;
+    }
+
+    @Override
+    public boolean searchForCard(int account) {
+        return bank.searchForCard(cards[account]) != null;
+    }
+}
@@ -0,0 +1,76 @@
+import benchmarks.Fixtures;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * The value history benchmarks: daily values of many investors as a random walk of up to
+ * about 1% a day, starting on 2020-01-01.
+ */
+public class HistoryFixture implements Fixtures.History {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+
+    private final Random random = new Random(17);
+    private ValueHistory history;
+    private String[] ids;
+    private long[] values;
+    private int[] nextDay;
+    private int days;
+    private File file;
+
+    @Override
+    public void fill(int investors, int days) throws Exception {
+        this.days = days;
+        history = new ValueHistory();
+        ids = new String[investors];
+        values = new long[investors];
+        nextDay = new int[investors];
+        for (int i = 0; i < investors; i++) {
+            ids[i] = "investor-" + i;
+            values[i] = Money.amountOf(1_000 + random.nextInt(1_000_000));
+        }
+        for (int d = 0; d < days; d++) {
+            for (int i = 0; i < investors; i++) {
+                recordNextDay(i);
+            }
+        }
+        file = File.createTempFile("history", ".dat");
+    }
+
+    @Override
+    public void recordNextDay(int investor) {
+        values[investor] += (long) (values[investor] * (random.nextGaussian() * 0.004));
+        history.record(ids[investor], FIRST_DAY.plusDays(nextDay[investor]++), values[investor]);
+    }
+
+    @Override
+    public int range(int investor, int from, int days, boolean weekly) {
+        LocalDate start = FIRST_DAY.plusDays(from);
+        return history.range(ids[investor], start, start.plusDays(days - 1),
+                weekly ? ValueHistory.Resolution.WEEKLY : ValueHistory.Resolution.DAILY).size();
+    }
+
+    @Override
+    public int rangeAllMonthly(int investor) {
+        return history.range(ids[investor], FIRST_DAY, FIRST_DAY.plusDays(days - 1), ValueHistory.Resolution.MONTHLY).size();
+    }
+
+    @Override
+    public long save() throws Exception {
+        history.save(file);
+        return file.length();
+    }
+
+    @Override
+    public long load() throws Exception {
+        return ValueHistory.load(file).pointCount();
+    }
+
+    @Override
+    public void delete() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import benchmarks.Fixtures;
+
+import java.util.ArrayList;
+
+/**
+ * The holdings benchmarks: the same synthetic assets in a list, summed through the asset
+ * objects as before the holding columns, and in a {@link HoldingStore}.
+ */
+public class HoldingsFixture implements Fixtures.Holdings {
+    private final SyntheticData data = new SyntheticData(42);
+    private ArrayList<Asset> assets;
+    private HoldingStore store;
+
+    @Override
+    public void fill(int holdings) {
+        assets = new ArrayList<Asset>(holdings);
+        store = new HoldingStore(holdings);
+        for (int i = 0; i < holdings; i++) {
+            Asset a = data.asset(i);
+            assets.add(a);
+            store.add(a);
+        }
+    }
+
+    @Override
+    public double listTotalValue() {
+        double sum = 0;
+        for (Asset a : assets) {
+            sum += a.getPurchasePrice() * a.getQuantity();
+        }
+        return sum;
+    }
+
+    @Override
+    public long storeTotalValue() {
+        return store.totalValue();
+    }
+
+    @Override
+    public double listZakat() {
+        double sum = 0;
+        for (Asset a : assets) {
+            if (a.IsItHalal()) {
+                sum += a.getQuantity() * a.getPurchasePrice() * 0.025;
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public long storeZakat() {
+        return store.zakat(25, 1000);
+    }
+
+    @Override
+    public double listValueInState() {
+        double sum = 0;
+        for (Asset a : assets) {
+            if (a.getAssetState() == state.New) {
+                sum += a.getPurchasePrice() * a.getQuantity();
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public long storeValueInState() {
+        return store.valueInState(state.New);
+    }
+}
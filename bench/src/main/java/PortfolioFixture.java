@@ -0,0 +1,89 @@
+import benchmarks.Fixtures;
+
+import java.util.Date;
+
+/**
+ * The portfolio benchmarks: one investor's portfolio of synthetic assets, and a position of
+ * as many lots of one asset.
+ */
+public class PortfolioFixture implements Fixtures.Portfolio {
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    private final SyntheticData data = new SyntheticData(11);
+    private final ZakatEngine zakat = new ZakatEngine(5_000);
+    private final Date now = new Date();
+    private Investor investor;
+    private Portfolio portfolio;
+    private Portfolio position;
+    private long nextLot;
+
+    @Override
+    public void fill(int assets) {
+        investor = new Investor.InvestorBuilder()
+                .addFullName("Investor Number")
+                .addUserName(SyntheticData.userName(0))
+                .addEmail(SyntheticData.userName(0) + "@example.com")
+                .addPassword(SyntheticData.password(0))
+                .createAnInvestor();
+        portfolio = investor.userPortfolio;
+        for (int i = 0; i < assets; i++) {
+            portfolio.addAsset(data.asset(i));
+        }
+        position = new Portfolio();
+        for (nextLot = 0; nextLot < assets; nextLot++) {
+            position.addAsset(lot(nextLot));
+        }
+    }
+
+    @Override
+    public double calculateTotalValue() {
+        return portfolio.calculateTotalValue();
+    }
+
+    @Override
+    public double getTotalValue() {
+        return portfolio.getTotalValue();
+    }
+
+    @Override
+    public double zakatDue() {
+        return portfolio.zakatDue();
+    }
+
+    @Override
+    public double zakatEngineCached() {
+        return zakat.compute(investor, now).getZakat();
+    }
+
+    @Override
+    public double zakatEngineAfterChange(int asset) {
+        Asset a = portfolio.get_asset(asset);
+        a.switchState(a.getAssetState() == state.New ? state.active : state.New);
+        return zakat.compute(investor, now).getZakat();
+    }
+
+    @Override
+    public long sellFifoAndBuyOneLot() {
+        long realized = position.sell("lot", Money.QUANTITY_SCALE, Money.priceOf(7), LotMethod.FIFO).getRealizedGainUnits();
+        position.addAsset(lot(nextLot++));
+        return realized;
+    }
+
+    /**
+     * Makes one lot of the position: a quantity of 1 bought on the given day.
+     *
+     * @param day Days since 1970 of the purchase.
+     * @return The lot.
+     */
+    private static Asset lot(long day) {
+        return new Asset.AssetBuilder()
+                .SetName("lot")
+                .SetQuantityUnits(Money.QUANTITY_SCALE)
+                .SetPurchasePriceUnits((1 + day % 10) * Money.PRICE_SCALE)
+                .SetPurchaseDate(new Date(day * DAY_MILLIS))
+                .SetAssetType("stock")
+                .SetIsHalal(true)
+                .SetAssetState()
+                .Build();
+    }
+}
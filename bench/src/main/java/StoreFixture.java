@@ -0,0 +1,81 @@
+import benchmarks.Fixtures;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * The investor store benchmarks: a store of synthetic investors in the working directory,
+ * filled in batches like {@link BulkImport} and compacted into one snapshot.
+ */
+public class StoreFixture implements Fixtures.Store {
+    private static final String[] STORE_FILES = {"Investors.txt", "Investors.log", "Ledger.log"};
+
+    private final SyntheticData data = new SyntheticData(17);
+    private file_manager store;
+    private Investor[] updated;
+    private int next;
+
+    @Override
+    public void fill(int investors) throws Exception {
+        for (String name : STORE_FILES) {
+            if (new File(name).exists()) {
+                throw new IllegalStateException("The working directory already has an investor store (" + name
+                        + "); run the benchmarks from an empty directory");
+            }
+        }
+        file_manager fm = new file_manager();
+        ArrayList<Investor> batch = new ArrayList<Investor>(BulkImport.BATCH_SIZE);
+        for (int i = 0; i < investors; i++) {
+            batch.add(data.investor(i));
+            if (batch.size() == BulkImport.BATCH_SIZE || i == investors - 1) {
+                fm.add_new_investors(batch);
+                batch.clear();
+            }
+        }
+        fm.compact();
+        store = new file_manager();
+        // read the headers now, not in the first measured login
+        store.investor_count();
+        updated = new Investor[investors];
+        next = investors;
+    }
+
+    @Override
+    public int loadAll() throws Exception {
+        file_manager fresh = new file_manager();
+        fresh.get_all_investors();
+        return fresh.all_investors.size();
+    }
+
+    @Override
+    public boolean logIn(String userName, String password) throws Exception {
+        return store.log_in(userName, password) != null;
+    }
+
+    @Override
+    public void addNew() throws Exception {
+        store.add_new_investor(data.investor(next++));
+    }
+
+    @Override
+    public void update(int investor) throws Exception {
+        Investor i = updated[investor];
+        if (i == null) {
+            // keep the copy that was saved, so its version stays the stored one
+            i = store.log_in(SyntheticData.userName(investor), SyntheticData.password(investor));
+            updated[investor] = i;
+        }
+        synchronized (i) {
+            Asset a = i.userPortfolio.get_asset(0);
+            a.switchState(a.getAssetState() == state.New ? state.active : state.New);
+        }
+        store.updateInvestor(i);
+    }
+
+    @Override
+    public void delete() {
+        for (String name : STORE_FILES) {
+            new File(name).delete();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Seeded generators of synthetic investors, assets, accounts and form inputs for the
+ * benchmarks. The same seed gives the same data, so runs are comparable.
+ */
+final class SyntheticData {
+    /** Assets in the portfolio of every synthetic investor. */
+    static final int ASSETS_PER_INVESTOR = 5;
+    private static final long DAY_MILLIS = 86_400_000L;
+    /** Purchase dates are spread over about three years before this instant. */
+    private static final long NOW = 1_760_000_000_000L;
+
+    private final Random random;
+
+    /**
+     * @param seed The seed of the generated data.
+     */
+    SyntheticData(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param i The investor's number.
+     * @return The user name of investor i.
+     */
+    static String userName(int i) {
+        return "user" + i;
+    }
+
+    /**
+     * @param i The investor's number.
+     * @return The password of investor i.
+     */
+    static String password(int i) {
+        return "Passw0rd" + i;
+    }
+
+    /**
+     * Makes an investor with user name {@link #userName}, password {@link #password} and
+     * {@value #ASSETS_PER_INVESTOR} assets.
+     *
+     * @param i The investor's number.
+     * @return The investor.
+     */
+    Investor investor(int i) {
+        Investor investor = new Investor.InvestorBuilder()
+                .addFullName("Investor Number")
+                .addUserName(userName(i))
+                .addEmail(userName(i) + "@example.com")
+                .addPassword(password(i))
+                .createAnInvestor();
+        for (int a = 0; a < ASSETS_PER_INVESTOR; a++) {
+            investor.userPortfolio.addAsset(asset(a));
+        }
+        return investor;
+    }
+
+    /**
+     * Makes an asset bought up to about three years ago.
+     *
+     * @param i The asset's number.
+     * @return The asset.
+     */
+    Asset asset(int i) {
+        return new Asset.AssetBuilder()
+                .SetName("asset" + i)
+                .SetQuantity(1 + random.nextInt(1000))
+                .SetPurchasePrice(random.nextFloat() * 500)
+                .SetPurchaseDate(new Date(NOW - random.nextInt(1100) * DAY_MILLIS))
+                .SetAssetType(i % 2 == 0 ? "stock" : "gold")
+                .SetIsHalal(random.nextBoolean())
+                .SetAssetState()
+                .Build();
+    }
+
+    /**
+     * Makes a bank account of owner "owner" + i.
+     *
+     * @param i The account's number.
+     * @return The account.
+     */
+    BankAccount account(int i) {
+        return new BankAccount(cardNumber(), "Holder Name", new Date(NOW + random.nextInt(1_000_000) * 1000L), "owner" + i);
+    }
+
+    /**
+     * @return A random 16-digit card number.
+     */
+    String cardNumber() {
+        return String.format("%016d", Math.abs(random.nextLong()) % 10_000_000_000_000_000L);
+    }
+
+    /**
+     * @return A random date in yyyy-MM-dd form.
+     */
+    String date() {
+        return String.format("%04d-%02d-%02d", 1990 + random.nextInt(40), 1 + random.nextInt(12), 1 + random.nextInt(28));
+    }
+
+    /**
+     * @return A random full name of two capitalized words.
+     */
+    String name() {
+        return word() + " " + word();
+    }
+
+    /**
+     * @param i A number that makes the password unique.
+     * @return A password of at least 8 characters with lower and upper case letters and digits.
+     */
+    String formPassword(int i) {
+        return word() + "X" + (1000 + i);
+    }
+
+    /**
+     * @return A capitalized word of 3 to 9 letters.
+     */
+    private String word() {
+        char[] w = new char[3 + random.nextInt(7)];
+        w[0] = (char) ('A' + random.nextInt(26));
+        for (int i = 1; i < w.length; i++) {
+            w[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(w);
+    }
+}
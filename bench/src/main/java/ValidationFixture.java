@@ -0,0 +1,111 @@
+import benchmarks.Fixtures;
+
+/**
+ * The validation benchmarks: valid inputs of every kind the checks accept.
+ * The matches methods are the checks as they were before the patterns were precompiled
+ * and the simple ones written by hand: a {@link String#matches} call per input.
+ */
+public class ValidationFixture implements Fixtures.Validation {
+    private static final String EMAIL = "^[\\w.-]+@[\\w.-]+\\.[a-zA-Z]{2,}$";
+    private static final String NAME = "^[A-Za-z\\s]+$";
+    private static final String PASSWORD = "^(?=.*[a-z])(?=.*[A-Z])(?=.*\\d).{8,}$";
+    private static final String NUMERIC = "\\d+";
+    private static final String DATE = "^\\d{4}-\\d{2}-\\d{2}$";
+
+    private final SyntheticData data = new SyntheticData(7);
+    private final ValidationImpl checker = new ValidationImpl();
+    private String[] emails;
+    private String[] names;
+    private String[] passwords;
+    private String[] cards;
+    private String[] dates;
+    private boolean[] results;
+
+    @Override
+    public void fill(int inputs) {
+        emails = new String[inputs];
+        names = new String[inputs];
+        passwords = new String[inputs];
+        cards = new String[inputs];
+        dates = new String[inputs];
+        results = new boolean[inputs];
+        for (int i = 0; i < inputs; i++) {
+            emails[i] = SyntheticData.userName(i) + "@example.com";
+            names[i] = data.name();
+            passwords[i] = data.formPassword(i);
+            cards[i] = data.cardNumber();
+            dates[i] = data.date();
+        }
+    }
+
+    @Override
+    public boolean checkEmail(int input) {
+        return checker.checkEmail(emails[input]);
+    }
+
+    @Override
+    public boolean checkName(int input) {
+        return checker.checkName(names[input]);
+    }
+
+    @Override
+    public boolean checkPassword(int input) {
+        return checker.checkPassword(passwords[input]);
+    }
+
+    @Override
+    public boolean checkIfNumeric(int input) {
+        return checker.checkIfNumeric(cards[input]);
+    }
+
+    @Override
+    public boolean checkDate(int input) {
+        return checker.checkDate(dates[input]);
+    }
+
+    @Override
+    public boolean checkCardNumber(int input) {
+        return checker.checkCardNumber(cards[input]);
+    }
+
+    @Override
+    public int checkCardColumn() {
+        return checker.checkColumn(cards, cards.length, checker::checkCardNumber, results);
+    }
+
+    @Override
+    public int checkDateColumn() {
+        return checker.checkColumn(dates, dates.length, checker::checkDate, results);
+    }
+
+    @Override
+    public boolean matchesEmail(int input) {
+        return emails[input].matches(EMAIL);
+    }
+
+    @Override
+    public boolean matchesName(int input) {
+        return names[input].matches(NAME);
+    }
+
+    @Override
+    public boolean matchesPassword(int input) {
+        return passwords[input].matches(PASSWORD);
+    }
+
+    @Override
+    public boolean matchesIfNumeric(int input) {
+        return cards[input].matches(NUMERIC);
+    }
+
+    @Override
+    public boolean matchesDate(int input) {
+        return dates[input].matches(DATE);
+    }
+
+    @Override
+    public boolean matchesCardNumber(int input) {
+        String card = cards[input];
+        return card.length() == 16 && card.matches(NUMERIC);
+    }
+}
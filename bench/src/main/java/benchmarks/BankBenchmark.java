@@ -0,0 +1,59 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bank's lookups of an account by owner and by card number.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BankBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int accounts;
+
+    private Fixtures.Bank bank;
+
+    /**
+     * Fills the bank.
+     */
+    @Setup(Level.Trial)
+    public void fill() {
+        bank = Fixtures.create(Fixtures.Bank.class, "BankFixture");
+        bank.fill(accounts);
+    }
+
+    /**
+     * @param cursor Picks the account.
+     * @return True.
+     */
+    @Benchmark
+    public boolean searchForUser(Cursor cursor) {
+        return bank.searchForUser(cursor.next(accounts));
+    }
+
+    /**
+     * @param cursor Picks the account.
+     * @return True.
+     */
+    @Benchmark
+    public boolean searchForCard(Cursor cursor) {
+        return bank.searchForCard(cursor.next(accounts));
+    }
+}
@@ -0,0 +1,23 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+
+/**
+ * Picks the investor, account or input a benchmark call works on: seeded and uniform, one
+ * sequence per benchmark thread.
+ */
+@State(Scope.Thread)
+public class Cursor {
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    /**
+     * @param bound Number of items.
+     * @return An item's number, from 0 to bound - 1.
+     */
+    public int next(int bound) {
+        return random.nextInt(bound);
+    }
+}
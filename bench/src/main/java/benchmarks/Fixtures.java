@@ -0,0 +1,349 @@
+package benchmarks;
+
+/**
+ * What the benchmarks run against the application.
+ *
+ * The application classes are in the unnamed package, which a benchmark class cannot refer
+ * to, and JMH does not accept benchmarks in the unnamed package. So each benchmark works on
+ * one of these interfaces, implemented next to the application by a fixture class that
+ * builds the synthetic data and makes the calls. A fixture is created by name once per
+ * trial; the calls through the interface have one implementation and are inlined.
+ */
+public final class Fixtures {
+    private Fixtures() {
+    }
+
+    /**
+     * Creates a fixture by the name of its class.
+     *
+     * @param type           The fixture interface.
+     * @param implementation The name of the class implementing it.
+     * @param <T>            The fixture type.
+     * @return A new fixture.
+     */
+    public static <T> T create(Class<T> type, String implementation) {
+        try {
+            return type.cast(Class.forName(implementation).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create " + implementation, e);
+        }
+    }
+
+    /**
+     * The investor store in the working directory.
+     */
+    public interface Store {
+        /**
+         * Creates a store of synthetic investors "user0", "user1", ... with their
+         * passwords "Passw0rd0", "Passw0rd1", ...
+         *
+         * @param investors Number of investors.
+         * @throws Exception if the working directory already has a store or it cannot be written.
+         */
+        void fill(int investors) throws Exception;
+
+        /**
+         * Reads every investor with a new store object, as at startup.
+         *
+         * @return The number of investors read.
+         * @throws Exception if the store cannot be read.
+         */
+        int loadAll() throws Exception;
+
+        /**
+         * Looks up a user and checks the password, as at login.
+         *
+         * @param userName The user name or email.
+         * @param password The password.
+         * @return True if the credentials match.
+         * @throws Exception if the investor cannot be read.
+         */
+        boolean logIn(String userName, String password) throws Exception;
+
+        /**
+         * Saves a new synthetic investor.
+         *
+         * @throws Exception if it cannot be saved.
+         */
+        void addNew() throws Exception;
+
+        /**
+         * Changes one asset of an investor and saves the investor.
+         *
+         * @param investor The investor's number.
+         * @throws Exception if it cannot be read or saved.
+         */
+        void update(int investor) throws Exception;
+
+        /**
+         * Deletes the store files.
+         */
+        void delete();
+    }
+
+    /**
+     * One portfolio.
+     */
+    public interface Portfolio {
+        /**
+         * Creates a portfolio of synthetic assets.
+         *
+         * @param assets Number of assets.
+         */
+        void fill(int assets);
+
+        /**
+         * @return The total value recomputed over all assets.
+         */
+        double calculateTotalValue();
+
+        /**
+         * @return The running total value.
+         */
+        double getTotalValue();
+
+        /**
+         * @return The zakat due, the figure zakat_due_amount prints.
+         */
+        double zakatDue();
+
+        /**
+         * @return The zakat of ZakatEngine.compute on the unchanged portfolio, a cache hit.
+         */
+        double zakatEngineCached();
+
+        /**
+         * Switches the state of one asset, so the engine's cached result is stale, and
+         * computes the zakat again.
+         *
+         * @param asset The asset's number.
+         * @return The zakat of ZakatEngine.compute.
+         */
+        double zakatEngineAfterChange(int asset);
+
+        /**
+         * Sells one unit FIFO from a position of as many one-unit lots as the portfolio has
+         * assets, which empties its oldest lot, and buys a new lot, so the size stays the same.
+         *
+         * @return The realized gain of the sale in value units.
+         */
+        long sellFifoAndBuyOneLot();
+    }
+
+    /**
+     * The same holdings as a list of assets and as holding columns.
+     */
+    public interface Holdings {
+        /**
+         * Creates synthetic holdings.
+         *
+         * @param holdings Number of holdings.
+         */
+        void fill(int holdings);
+
+        /**
+         * @return The total value summed over the asset list.
+         */
+        double listTotalValue();
+
+        /**
+         * @return HoldingStore.totalValue.
+         */
+        long storeTotalValue();
+
+        /**
+         * @return The zakat on the halal assets, summed over the asset list.
+         */
+        double listZakat();
+
+        /**
+         * @return HoldingStore.zakat.
+         */
+        long storeZakat();
+
+        /**
+         * @return The value of the New assets, summed over the asset list.
+         */
+        double listValueInState();
+
+        /**
+         * @return HoldingStore.valueInState for New.
+         */
+        long storeValueInState();
+    }
+
+    /**
+     * A value history of daily points for many investors.
+     */
+    public interface History {
+        /**
+         * Records a random walk of daily values for each investor.
+         *
+         * @param investors Number of investors.
+         * @param days      Number of days.
+         * @throws Exception if the file the history is saved to cannot be created.
+         */
+        void fill(int investors, int days) throws Exception;
+
+        /**
+         * Records an investor's value for the day after its last one.
+         *
+         * @param investor The investor's number.
+         */
+        void recordNextDay(int investor);
+
+        /**
+         * @param investor The investor's number.
+         * @param from     Days after the first day of the range.
+         * @param days     Length of the range in days.
+         * @param weekly   True for weekly points, false for daily ones.
+         * @return The number of points in the range.
+         */
+        int range(int investor, int from, int days, boolean weekly);
+
+        /**
+         * @param investor The investor's number.
+         * @return The number of monthly points over the investor's whole history.
+         */
+        int rangeAllMonthly(int investor);
+
+        /**
+         * Saves the history to its file.
+         *
+         * @return The size of the file.
+         * @throws Exception if it cannot be written.
+         */
+        long save() throws Exception;
+
+        /**
+         * Reads the history back from its file.
+         *
+         * @return The number of points read.
+         * @throws Exception if it cannot be read.
+         */
+        long load() throws Exception;
+
+        /**
+         * Deletes the history's file.
+         */
+        void delete();
+    }
+
+    /**
+     * The bank's account lookups.
+     */
+    public interface Bank {
+        /**
+         * Registers synthetic accounts owned by "owner0", "owner1", ...
+         *
+         * @param accounts Number of accounts.
+         */
+        void fill(int accounts);
+
+        /**
+         * @param account An account's number.
+         * @return True if the account is found by its owner.
+         */
+        boolean searchForUser(int account);
+
+        /**
+         * @param account An account's number.
+         * @return True if the account is found by its card number.
+         */
+        boolean searchForCard(int account);
+    }
+
+    /**
+     * The input checks.
+     */
+    public interface Validation {
+        /**
+         * Creates synthetic valid inputs of every kind.
+         *
+         * @param inputs Number of inputs of each kind.
+         */
+        void fill(int inputs);
+
+        /**
+         * @param input An input's number.
+         * @return The result of checkEmail.
+         */
+        boolean checkEmail(int input);
+
+        /**
+         * @param input An input's number.
+         * @return The result of checkName.
+         */
+        boolean checkName(int input);
+
+        /**
+         * @param input An input's number.
+         * @return The result of checkPassword.
+         */
+        boolean checkPassword(int input);
+
+        /**
+         * @param input An input's number.
+         * @return The result of checkIfNumeric.
+         */
+        boolean checkIfNumeric(int input);
+
+        /**
+         * @param input An input's number.
+         * @return The result of checkDate.
+         */
+        boolean checkDate(int input);
+
+        /**
+         * @param input An input's number.
+         * @return The result of checkCardNumber.
+         */
+        boolean checkCardNumber(int input);
+
+        /**
+         * @return The number of valid card numbers, checked as one column.
+         */
+        int checkCardColumn();
+
+        /**
+         * @return The number of valid dates, checked as one column.
+         */
+        int checkDateColumn();
+
+        /**
+         * @param input An input's number.
+         * @return The result of the baseline checkEmail, a regular expression match.
+         */
+        boolean matchesEmail(int input);
+
+        /**
+         * @param input An input's number.
+         * @return The result of the baseline checkName, a regular expression match.
+         */
+        boolean matchesName(int input);
+
+        /**
+         * @param input An input's number.
+         * @return The result of the baseline checkPassword, a regular expression match.
+         */
+        boolean matchesPassword(int input);
+
+        /**
+         * @param input An input's number.
+         * @return The result of the baseline checkIfNumeric, a regular expression match.
+         */
+        boolean matchesIfNumeric(int input);
+
+        /**
+         * @param input An input's number.
+         * @return The result of the baseline checkDate, a regular expression match.
+         */
+        boolean matchesDate(int input);
+
+        /**
+         * @param input An input's number.
+         * @return The result of the baseline the card check, a regular expression match.
+         */
+        boolean matchesCardNumber(int input);
+    }
+}
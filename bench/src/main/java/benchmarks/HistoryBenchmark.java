@@ -0,0 +1,111 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The value history over five years of daily values: recording a day, the chart ranges at
+ * three resolutions, and saving and loading the whole history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HistoryBenchmark {
+    private static final int DAYS = 5 * 365;
+
+    @Param({"10000"})
+    public int investors;
+
+    private Fixtures.History history;
+
+    /**
+     * Records the daily values of every investor and saves them once, for {@link #load}.
+     *
+     * @throws Exception if the history file cannot be written.
+     */
+    @Setup(Level.Trial)
+    public void fill() throws Exception {
+        history = Fixtures.create(Fixtures.History.class, "HistoryFixture");
+        history.fill(investors, DAYS);
+        history.save();
+    }
+
+    /**
+     * Deletes the history file.
+     */
+    @TearDown(Level.Trial)
+    public void delete() {
+        history.delete();
+    }
+
+    /**
+     * @param cursor Picks the investor.
+     */
+    @Benchmark
+    public void recordNextDay(Cursor cursor) {
+        history.recordNextDay(cursor.next(investors));
+    }
+
+    /**
+     * @param cursor Picks the investor and the first day.
+     * @return The number of daily points in a month.
+     */
+    @Benchmark
+    public int rangeOneMonthDaily(Cursor cursor) {
+        return history.range(cursor.next(investors), cursor.next(DAYS - 31), 31, false);
+    }
+
+    /**
+     * @param cursor Picks the investor and the first day.
+     * @return The number of weekly points in a year.
+     */
+    @Benchmark
+    public int rangeOneYearWeekly(Cursor cursor) {
+        return history.range(cursor.next(investors), cursor.next(DAYS - 366), 366, true);
+    }
+
+    /**
+     * @param cursor Picks the investor.
+     * @return The number of monthly points in five years.
+     */
+    @Benchmark
+    public int rangeFiveYearsMonthly(Cursor cursor) {
+        return history.rangeAllMonthly(cursor.next(investors));
+    }
+
+    /**
+     * @return The size of the saved file.
+     * @throws Exception if it cannot be written.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long save() throws Exception {
+        return history.save();
+    }
+
+    /**
+     * @return The number of points read.
+     * @throws Exception if the file cannot be read.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long load() throws Exception {
+        return history.load();
+    }
+}
@@ -0,0 +1,90 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Valuation over a list of assets against valuation over the holding columns of
+ * HoldingStore: the total value, the zakat and the value in one state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HoldingsBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int holdings;
+
+    private Fixtures.Holdings store;
+
+    /**
+     * Fills the list and the holding columns.
+     */
+    @Setup(Level.Trial)
+    public void fill() {
+        store = Fixtures.create(Fixtures.Holdings.class, "HoldingsFixture");
+        store.fill(holdings);
+    }
+
+    /**
+     * @return The total value over the asset list.
+     */
+    @Benchmark
+    public double listTotalValue() {
+        return store.listTotalValue();
+    }
+
+    /**
+     * @return HoldingStore.totalValue.
+     */
+    @Benchmark
+    public long storeTotalValue() {
+        return store.storeTotalValue();
+    }
+
+    /**
+     * @return The zakat over the asset list.
+     */
+    @Benchmark
+    public double listZakat() {
+        return store.listZakat();
+    }
+
+    /**
+     * @return HoldingStore.zakat.
+     */
+    @Benchmark
+    public long storeZakat() {
+        return store.storeZakat();
+    }
+
+    /**
+     * @return The value of the New assets over the asset list.
+     */
+    @Benchmark
+    public double listValueInState() {
+        return store.listValueInState();
+    }
+
+    /**
+     * @return HoldingStore.valueInState.
+     */
+    @Benchmark
+    public long storeValueInState() {
+        return store.storeValueInState();
+    }
+}
@@ -0,0 +1,93 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Portfolio valuation: the full recompute against the running total, and the zakat due.
+ * Portfolio.zakat_due_amount prints the zakatDue figure; printing is left out. Also the
+ * ZakatEngine result, cached and after a change, and a FIFO sale from a position of as many
+ * lots.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PortfolioBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int assets;
+
+    private Fixtures.Portfolio portfolio;
+
+    /**
+     * Fills the portfolio.
+     */
+    @Setup(Level.Trial)
+    public void fill() {
+        portfolio = Fixtures.create(Fixtures.Portfolio.class, "PortfolioFixture");
+        portfolio.fill(assets);
+    }
+
+    /**
+     * @return Portfolio.calculateTotalValue.
+     */
+    @Benchmark
+    public double calculateTotalValue() {
+        return portfolio.calculateTotalValue();
+    }
+
+    /**
+     * @return Portfolio.getTotalValue, the running total.
+     */
+    @Benchmark
+    public double getTotalValue() {
+        return portfolio.getTotalValue();
+    }
+
+    /**
+     * @return Portfolio.zakatDue.
+     */
+    @Benchmark
+    public double zakatDue() {
+        return portfolio.zakatDue();
+    }
+
+    /**
+     * @return ZakatEngine.compute on the unchanged portfolio.
+     */
+    @Benchmark
+    public double zakatEngineCached() {
+        return portfolio.zakatEngineCached();
+    }
+
+    /**
+     * @param cursor Picks the asset to change.
+     * @return ZakatEngine.compute after one asset changed state.
+     */
+    @Benchmark
+    public double zakatEngineAfterChange(Cursor cursor) {
+        return portfolio.zakatEngineAfterChange(cursor.next(assets));
+    }
+
+    /**
+     * @return The realized gain of Portfolio.sell, FIFO, of one lot; a new lot is bought after it.
+     */
+    @Benchmark
+    public long sellFifoAndBuyOneLot() {
+        return portfolio.sellFifoAndBuyOneLot();
+    }
+}
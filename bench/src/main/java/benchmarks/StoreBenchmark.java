@@ -0,0 +1,128 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The investor store: reading every investor at startup, the login lookup, and saving a
+ * new and a changed investor. Each trial fills a fresh store of synthetic investors in the
+ * working directory and deletes it afterwards, so run from an empty directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StoreBenchmark {
+    /** Investors logged in by the lookup benchmarks, picked at random from the store. */
+    private static final int LOGINS = 1024;
+
+    @Param({"1000", "100000", "1000000"})
+    public int investors;
+
+    private Fixtures.Store store;
+    private String[] userNames;
+    private String[] passwords;
+
+    /**
+     * Fills the store.
+     *
+     * @throws Exception if the working directory already has a store or it cannot be written.
+     */
+    @Setup(Level.Trial)
+    public void fill() throws Exception {
+        store = Fixtures.create(Fixtures.Store.class, "StoreFixture");
+        store.fill(investors);
+        Cursor cursor = new Cursor();
+        userNames = new String[LOGINS];
+        passwords = new String[LOGINS];
+        for (int i = 0; i < LOGINS; i++) {
+            int investor = cursor.next(investors);
+            userNames[i] = "user" + investor;
+            passwords[i] = "Passw0rd" + investor;
+        }
+    }
+
+    /**
+     * Deletes the store.
+     */
+    @TearDown(Level.Trial)
+    public void delete() {
+        store.delete();
+    }
+
+    /**
+     * file_manager.get_all_investors on a new store object.
+     *
+     * @return The number of investors read.
+     * @throws Exception if the store cannot be read.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1, time = 5)
+    @Measurement(iterations = 3, time = 5)
+    public int getAllInvestors() throws Exception {
+        return store.loadAll();
+    }
+
+    /**
+     * The lookup behind Main.log_in: an existing user with the right password.
+     *
+     * @param cursor Picks the user.
+     * @return True.
+     * @throws Exception if the investor cannot be read.
+     */
+    @Benchmark
+    public boolean logIn(Cursor cursor) throws Exception {
+        int i = cursor.next(LOGINS);
+        return store.logIn(userNames[i], passwords[i]);
+    }
+
+    /**
+     * The lookup behind Main.log_in for a user name that is not stored.
+     *
+     * @param cursor Picks the user.
+     * @return False.
+     * @throws Exception if the store cannot be read.
+     */
+    @Benchmark
+    public boolean logInUnknownUser(Cursor cursor) throws Exception {
+        int i = cursor.next(LOGINS);
+        return store.logIn(passwords[i], passwords[i]);
+    }
+
+    /**
+     * file_manager.add_new_investor with a new synthetic investor.
+     *
+     * @throws Exception if it cannot be saved.
+     */
+    @Benchmark
+    public void addNewInvestor() throws Exception {
+        store.addNew();
+    }
+
+    /**
+     * file_manager.updateInvestor after changing the state of one asset.
+     *
+     * @param cursor Picks the investor.
+     * @throws Exception if it cannot be read or saved.
+     */
+    @Benchmark
+    public void updateInvestor(Cursor cursor) throws Exception {
+        store.update(cursor.next(investors));
+    }
+}
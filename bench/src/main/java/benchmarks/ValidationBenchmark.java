@@ -0,0 +1,169 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ValidationImpl checks on valid input, one value per call, and the card and date
+ * checks over a column of values. Each check has a regex variant next to it, the baseline
+ * {@code String.matches} version, to compare against.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ValidationBenchmark {
+    /** Inputs of each kind. */
+    private static final int INPUTS = 1024;
+
+    private Fixtures.Validation checks;
+
+    /**
+     * Makes the inputs.
+     */
+    @Setup(Level.Trial)
+    public void fill() {
+        checks = Fixtures.create(Fixtures.Validation.class, "ValidationFixture");
+        checks.fill(INPUTS);
+    }
+
+    /**
+     * @param cursor Picks the input.
+     * @return The result of checkEmail.
+     */
+    @Benchmark
+    public boolean checkEmail(Cursor cursor) {
+        return checks.checkEmail(cursor.next(INPUTS));
+    }
+
+    /**
+     * @param cursor Picks the input.
+     * @return The result of the baseline regex version of checkEmail.
+     */
+    @Benchmark
+    public boolean matchesEmail(Cursor cursor) {
+        return checks.matchesEmail(cursor.next(INPUTS));
+    }
+
+    /**
+     * @param cursor Picks the input.
+     * @return The result of checkName.
+     */
+    @Benchmark
+    public boolean checkName(Cursor cursor) {
+        return checks.checkName(cursor.next(INPUTS));
+    }
+
+    /**
+     * @param cursor Picks the input.
+     * @return The result of the baseline regex version of checkName.
+     */
+    @Benchmark
+    public boolean matchesName(Cursor cursor) {
+        return checks.matchesName(cursor.next(INPUTS));
+    }
+
+    /**
+     * @param cursor Picks the input.
+     * @return The result of checkPassword.
+     */
+    @Benchmark
+    public boolean checkPassword(Cursor cursor) {
+        return checks.checkPassword(cursor.next(INPUTS));
+    }
+
+    /**
+     * @param cursor Picks the input.
+     * @return The result of the baseline regex version of checkPassword.
+     */
+    @Benchmark
+    public boolean matchesPassword(Cursor cursor) {
+        return checks.matchesPassword(cursor.next(INPUTS));
+    }
+
+    /**
+     * @param cursor Picks the input.
+     * @return The result of checkIfNumeric.
+     */
+    @Benchmark
+    public boolean checkIfNumeric(Cursor cursor) {
+        return checks.checkIfNumeric(cursor.next(INPUTS));
+    }
+
+    /**
+     * @param cursor Picks the input.
+     * @return The result of the baseline regex version of checkIfNumeric.
+     */
+    @Benchmark
+    public boolean matchesIfNumeric(Cursor cursor) {
+        return checks.matchesIfNumeric(cursor.next(INPUTS));
+    }
+
+    /**
+     * @param cursor Picks the input.
+     * @return The result of checkDate.
+     */
+    @Benchmark
+    public boolean checkDate(Cursor cursor) {
+        return checks.checkDate(cursor.next(INPUTS));
+    }
+
+    /**
+     * @param cursor Picks the input.
+     * @return The result of the baseline regex version of checkDate.
+     */
+    @Benchmark
+    public boolean matchesDate(Cursor cursor) {
+        return checks.matchesDate(cursor.next(INPUTS));
+    }
+
+    /**
+     * @param cursor Picks the input.
+     * @return The result of checkCardNumber.
+     */
+    @Benchmark
+    public boolean checkCardNumber(Cursor cursor) {
+        return checks.checkCardNumber(cursor.next(INPUTS));
+    }
+
+    /**
+     * @param cursor Picks the input.
+     * @return The result of the baseline regex version of checkCardNumber.
+     */
+    @Benchmark
+    public boolean matchesCardNumber(Cursor cursor) {
+        return checks.matchesCardNumber(cursor.next(INPUTS));
+    }
+
+    /**
+     * @return The number of valid card numbers; the time is per value.
+     */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int checkCardColumn() {
+        return checks.checkCardColumn();
+    }
+
+    /**
+     * @return The number of valid dates; the time is per value.
+     */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int checkDateColumn() {
+        return checks.checkDateColumn();
+    }
+}
@@ -1,25 +1,45 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Date;
 
-/**
- * Enum representing the state of an asset.
- */
-enum state{
-    New , frozen, sold, active;
-}
-
 /**
  * Represents a financial asset with details such as name, type, quantity, price, and halal status.
  * The asset also has a lifecycle state.
+ * Quantity and prices are fixed-point amounts in {@link Money} units; the float getters
+ * and setters convert.
  */
 class Asset implements Serializable{
+    private static final long serialVersionUID = -2742119705613771332L;
+    /**
+     * The serialized form: the float quantity and price of older versions, still written so
+     * they can read new data, the exact amounts in units, and the lot id.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("name", String.class),
+        new ObjectStreamField("quantity", float.class),
+        new ObjectStreamField("PurchasePrice", float.class),
+        new ObjectStreamField("PurchaseDate", Date.class),
+        new ObjectStreamField("assetType", String.class),
+        new ObjectStreamField("assetState", state.class),
+        new ObjectStreamField("isHalal", boolean.class),
+        new ObjectStreamField("quantityUnits", long.class),
+        new ObjectStreamField("purchasePriceUnits", long.class),
+        new ObjectStreamField("lotId", long.class),
+    };
     private String name;
-    private float quantity;
-    private float PurchasePrice;
+    private long quantity;
+    private long PurchasePrice;
     private Date PurchaseDate;
     private String assetType;
     private state assetState;
     private boolean isHalal;
+    private long lotId;
+    private transient Portfolio owner;
+    private transient int holdingSlot = -1;
+    private transient volatile long marketPrice;
 
     /**
      * Constructs an Asset using the AssetBuilder.
@@ -47,16 +67,70 @@ class Asset implements Serializable{
      * @return The quantity of the asset.
      */
     public float getQuantity(){
+        return (float) Money.quantity(this.quantity);
+    }
+
+    /**
+     * @return The quantity of the asset in {@link Money} quantity units.
+     */
+    public long getQuantityUnits(){
         return this.quantity;
     }
 
     /**
      * @return The purchase price of the asset.
      */
-    public Float getPurchasePrice(){
+    public float getPurchasePrice(){
+        return (float) Money.price(this.PurchasePrice);
+    }
+
+    /**
+     * @return The purchase price of the asset in {@link Money} price units.
+     */
+    public long getPurchasePriceUnits(){
         return this.PurchasePrice;
     }
 
+    /**
+     * @return The latest market price of the asset, or the purchase price if no price has been seen.
+     */
+    public float getMarketPrice(){
+        return (float) Money.price(getMarketPriceUnits());
+    }
+
+    /**
+     * @return The latest market price in {@link Money} price units, or the purchase price
+     *         if no price has been seen.
+     */
+    public long getMarketPriceUnits(){
+        long m = this.marketPrice;
+        return m > 0 ? m : this.PurchasePrice;
+    }
+
+    /**
+     * @return The value of the asset at purchase price, in {@link Money} value units.
+     */
+    public long getValueUnits(){
+        return Money.valueOf(this.quantity, this.PurchasePrice);
+    }
+
+    /**
+     * @return The value of the asset at its latest market price, in {@link Money} value units.
+     */
+    public long getMarketValueUnits(){
+        return Money.valueOf(this.quantity, getMarketPriceUnits());
+    }
+
+    /**
+     * Sets the latest market price. Only the owning portfolio calls this, so it can
+     * adjust its market value at the same time.
+     *
+     * @param priceUnits The new price in {@link Money} price units, or 0 to fall back to the purchase price.
+     */
+    void setMarketPrice(long priceUnits){
+        this.marketPrice = priceUnits;
+    }
+
     /**
      * @return The purchase date of the asset.
      */
@@ -95,6 +169,41 @@ class Asset implements Serializable{
      * @param isHalal      Updated halal status.
      */
     public void updateAsset(String name, float quantity, float purchasePrice,String assetType, boolean isHalal) {
+        updateAssetUnits(name, Money.quantityOf(quantity), Money.priceOf(purchasePrice), assetType, isHalal);
+    }
+
+    /**
+     * Updates key asset details, with the amounts in {@link Money} units.
+     *
+     * @param name          New name of the asset.
+     * @param quantity      New quantity in quantity units.
+     * @param purchasePrice New purchase price in price units.
+     * @param assetType     New type of asset.
+     * @param isHalal       Updated halal status.
+     * @throws IllegalArgumentException if the new value would not fit in the portfolio's
+     *                                  totals; the asset is then unchanged.
+     */
+    public void updateAssetUnits(String name, long quantity, long purchasePrice, String assetType, boolean isHalal) {
+        Portfolio o = owner;
+        if (o == null) {
+            set(name, quantity, purchasePrice, assetType, isHalal);
+            return;
+        }
+        PortfolioMutationEvent event = new PortfolioMutationEvent();
+        event.begin();
+        synchronized (o) {
+            o.checkInRange(quantity, purchasePrice, marketPrice > 0 ? marketPrice : purchasePrice, this);
+            o.beforeAssetChange(this);
+            set(name, quantity, purchasePrice, assetType, isHalal);
+            o.afterAssetChange(this);
+            o.commit(event, "edit", this);
+        }
+    }
+
+    /**
+     * Assigns the fields changed by {@link #updateAsset}.
+     */
+    private void set(String name, long quantity, long purchasePrice, String assetType, boolean isHalal) {
         this.name = name;
         this.quantity = quantity;
         this.PurchasePrice = purchasePrice;
@@ -102,13 +211,69 @@ class Asset implements Serializable{
         this.isHalal = isHalal;
     }
 
+    /**
+     * Sets the portfolio that holds this asset, so it can keep its totals up to date
+     * when the asset changes. Null detaches the asset.
+     *
+     * @param owner The portfolio holding the asset.
+     */
+    void setOwner(Portfolio owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * @return The portfolio holding the asset, or null.
+     */
+    Portfolio getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return The id of this lot within its portfolio, or 0 if it has none yet.
+     */
+    long getLotId() {
+        return lotId;
+    }
+
+    /**
+     * Gives the lot its id. Only the portfolio assigns ids, when the lot is added or read.
+     *
+     * @param id The id, unique within the portfolio.
+     */
+    void setLotId(long id) {
+        this.lotId = id;
+    }
+
+    /**
+     * @return The row of this asset in its portfolio's {@link HoldingStore}, or -1.
+     */
+    int getHoldingSlot() {
+        return holdingSlot;
+    }
+
+    /**
+     * @param slot The row of this asset in its portfolio's {@link HoldingStore}.
+     */
+    void setHoldingSlot(int slot) {
+        this.holdingSlot = slot;
+    }
+
     /**
      * Changes the current state of the asset.
      *
      * @param newState The new state to switch to.
      */
     public void switchState(state new_state){
-        this.assetState = new_state;
+        Portfolio o = owner;
+        if (o == null) {
+            this.assetState = new_state;
+            return;
+        }
+        synchronized (o) {
+            o.beforeStateChange(this);
+            this.assetState = new_state;
+            o.assetStateChanged(this);
+        }
     }
 
     /**
@@ -119,20 +284,68 @@ class Asset implements Serializable{
     @Override
     public String toString(){
         return "Name: " + name +
-            ", Quantity: " + quantity + 
-            ", Purchase price: " + PurchasePrice + 
+            ", Quantity: " + getQuantity() + 
+            ", Purchase price: " + getPurchasePrice() + 
             "$, Purchase date: "+ PurchaseDate.toString() +
             ", Asset type: " + assetType +
             ", is it halal: " + (isHalal?"Yes":"No") + "\n";
     }
 
+    /**
+     * Writes the asset, with the amounts both as floats for older versions and exactly.
+     *
+     * @param out The stream to write to.
+     * @throws IOException if the stream cannot be written.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("name", name);
+        fields.put("quantity", getQuantity());
+        fields.put("PurchasePrice", getPurchasePrice());
+        fields.put("PurchaseDate", PurchaseDate);
+        fields.put("assetType", assetType);
+        fields.put("assetState", assetState);
+        fields.put("isHalal", isHalal);
+        fields.put("quantityUnits", quantity);
+        fields.put("purchasePriceUnits", PurchasePrice);
+        fields.put("lotId", lotId);
+        out.writeFields();
+    }
+
+    /**
+     * Reads an asset. Data from older versions only has the float amounts, which are
+     * converted through their shortest decimal form ({@link Money#quantityOf(float)}), and
+     * no lot id, which the portfolio then assigns.
+     *
+     * @param in The stream to read from.
+     * @throws IOException            if the stream cannot be read.
+     * @throws ClassNotFoundException if a class of the stream is unknown.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        name = (String) fields.get("name", null);
+        PurchaseDate = (Date) fields.get("PurchaseDate", null);
+        assetType = (String) fields.get("assetType", null);
+        assetState = (state) fields.get("assetState", null);
+        isHalal = fields.get("isHalal", false);
+        if (fields.defaulted("quantityUnits")) {
+            quantity = Money.quantityOf(fields.get("quantity", 0f));
+            PurchasePrice = Money.priceOf(fields.get("PurchasePrice", 0f));
+        } else {
+            quantity = fields.get("quantityUnits", 0L);
+            PurchasePrice = fields.get("purchasePriceUnits", 0L);
+        }
+        lotId = fields.get("lotId", 0L);
+        holdingSlot = -1;
+    }
+
     /**
      * Builder class for constructing Asset objects.
      */
     public static class AssetBuilder{
         private String name;
-        private float quantity;
-        private float PurchasePrice;
+        private long quantity;
+        private long PurchasePrice;
         private Date PurchaseDate;
         private String assetType;
         private state assetState;
@@ -156,7 +369,18 @@ class Asset implements Serializable{
          * @return The current builder instance.
          */
         public AssetBuilder SetQuantity(float q){
-            this.quantity = q;
+            this.quantity = Money.quantityOf(q);
+            return this;
+        }
+
+        /**
+         * Sets the asset quantity in {@link Money} quantity units.
+         *
+         * @param units The quantity in units.
+         * @return The current builder instance.
+         */
+        public AssetBuilder SetQuantityUnits(long units){
+            this.quantity = units;
             return this;
         }
 
@@ -167,7 +391,18 @@ class Asset implements Serializable{
          * @return The current builder instance.
          */
         public AssetBuilder SetPurchasePrice(float pPrice){
-            this.PurchasePrice = pPrice;
+            this.PurchasePrice = Money.priceOf(pPrice);
+            return this;
+        }
+
+        /**
+         * Sets the asset purchase price in {@link Money} price units.
+         *
+         * @param units The price in units.
+         * @return The current builder instance.
+         */
+        public AssetBuilder SetPurchasePriceUnits(long units){
+            this.PurchasePrice = units;
             return this;
         }
 
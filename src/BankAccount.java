@@ -7,11 +7,13 @@ import java.io.Serializable;
  * Includes OTP validation and expiry checking.
  */
 public class BankAccount implements Serializable{
+    private static final long serialVersionUID = -5562177245863725072L;
     private String cardNumber; 
     private String cardHolderName;
     private Date expiryDate;
     private String accountOwnerId;
     private String OTP;
+    private transient TheBank registry;
 
     /**
      * Constructs a BankAccount with the provided card and owner details.
@@ -54,7 +56,17 @@ public class BankAccount implements Serializable{
      * @return True if the expiry date is in the future; false otherwise.
      */
     public boolean checkCard() {
-        return expiryDate.after(new Date());
+        return checkCard(System.currentTimeMillis());
+    }
+
+    /**
+     * Checks if the card is still valid at the given time.
+     *
+     * @param nowMillis The time to check against, in epoch milliseconds.
+     * @return True if the expiry date is after that time; false otherwise.
+     */
+    public boolean checkCard(long nowMillis) {
+        return expiryDate.getTime() > nowMillis;
     }
 
     /**
@@ -82,7 +94,20 @@ public class BankAccount implements Serializable{
      * @param expiryDate The new expiry date.
      */
     public void setExpiryDate(Date expiryDate) {
+        Date old = this.expiryDate;
         this.expiryDate = expiryDate;
+        if (registry != null) {
+            registry.expiryChanged(this, old);
+        }
+    }
+
+    /**
+     * Sets the bank that indexes this account, so it can follow expiry date changes.
+     *
+     * @param registry The bank holding the account.
+     */
+    void setRegistry(TheBank registry) {
+        this.registry = registry;
     }
 
     /**
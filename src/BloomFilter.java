@@ -0,0 +1,76 @@
+/**
+ * A Bloom filter over strings.
+ * Answers "definitely not present" or "possibly present"; a negative answer is always
+ * right, so callers only need to confirm positives with an exact lookup.
+ * Entries cannot be removed.
+ */
+class BloomFilter {
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+
+    /**
+     * Creates a filter sized for the expected number of entries at the given false positive rate.
+     *
+     * @param expectedEntries  Number of entries the filter should hold.
+     * @param falsePositiveRate Wanted false positive rate, e.g. 0.01.
+     */
+    public BloomFilter(int expectedEntries, double falsePositiveRate) {
+        int n = Math.max(expectedEntries, 1);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+        this.bits = new long[(bitCount + 63) >>> 6];
+    }
+
+    /**
+     * Adds a key to the filter.
+     *
+     * @param key The key to add.
+     */
+    public void add(String key) {
+        long h = hash(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Checks whether a key may have been added.
+     *
+     * @param key The key to check.
+     * @return False if the key was never added; true if it possibly was.
+     */
+    public boolean mightContain(String key) {
+        long h = hash(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spreads the string hash code over 64 bits (the MurmurHash3 finalizer),
+     * giving the two independent hashes used for double hashing.
+     *
+     * @param key The key to hash.
+     * @return A 64-bit hash of the key.
+     */
+    private static long hash(String key) {
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
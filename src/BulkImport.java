@@ -0,0 +1,356 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+
+/**
+ * Imports investors with their assets and bank accounts from a CSV file.
+ * Every row starts with its type; asset and bank rows belong to the investor row above them:
+ * <pre>
+ * I,full name,user name,email,password
+ * A,asset name,quantity,purchase price,yyyy-MM-dd,asset type,y/n
+ * B,card number,card holder name,yyyy-MM-dd
+ * </pre>
+ * The file is read one line at a time and finished investors are written to the store in
+ * batches, so memory use does not grow with the size of the file. Rows that fail
+ * validation are written to an error file with their line number and the reason, and the
+ * rest of the file is still imported. When an investor row is rejected, its asset and bank
+ * rows are rejected too.
+ */
+public class BulkImport {
+    static final int BATCH_SIZE = 1000;
+
+    private final file_manager store;
+    private final ValidationImpl checker = new ValidationImpl();
+    private final SimpleDateFormat date_format = new SimpleDateFormat("yyyy-MM-dd");
+    private final ArrayList<Investor> batch = new ArrayList<Investor>(BATCH_SIZE);
+    private final HashSet<String> pending_user_names = new HashSet<String>();
+    private final HashSet<String> pending_emails = new HashSet<String>();
+    private final ArrayList<String> fields = new ArrayList<String>();
+    private Investor current;
+    private boolean skipping;
+    private int investors_imported;
+    private int rows_rejected;
+
+    /**
+     * Creates an importer that writes to the given store.
+     *
+     * @param store The investor store.
+     */
+    public BulkImport(file_manager store) {
+        this.store = store;
+        this.date_format.setLenient(false);
+    }
+
+    /**
+     * Imports a CSV file.
+     * Usage: {@code java BulkImport investors.csv [errors.csv]}
+     *
+     * @param args The CSV file and, optionally, the error file (default: the CSV name plus ".errors").
+     * @throws Exception if the files cannot be read or written.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java BulkImport <file.csv> [errors.csv]");
+            System.exit(2);
+        }
+        File errors = new File(args.length > 1 ? args[1] : args[0] + ".errors");
+        BulkImport importer = new BulkImport(new file_manager());
+        importer.run(new File(args[0]), errors);
+        System.out.println("Imported " + importer.get_investors_imported() + " investors, rejected "
+                + importer.get_rows_rejected() + " rows (see " + errors + ")");
+    }
+
+    /**
+     * Imports every row of the file.
+     *
+     * @param csv    The file to import.
+     * @param errors The file rejected rows are written to.
+     * @throws Exception if the files cannot be read or written.
+     */
+    public void run(File csv, File errors) throws Exception {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(csv), StandardCharsets.UTF_8), 1 << 16);
+             PrintWriter rejected = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(errors), StandardCharsets.UTF_8)))) {
+            rejected.println("line,reason,row");
+            String line;
+            int number = 0;
+            while ((line = in.readLine()) != null) {
+                number++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                String reason = import_row(line);
+                if (reason != null) {
+                    rows_rejected++;
+                    rejected.println(number + "," + quote(reason) + "," + quote(line));
+                }
+            }
+            finish_investor();
+            flush();
+        }
+    }
+
+    /**
+     * @return The number of investors written to the store.
+     */
+    public int get_investors_imported() {
+        return investors_imported;
+    }
+
+    /**
+     * @return The number of rows written to the error file.
+     */
+    public int get_rows_rejected() {
+        return rows_rejected;
+    }
+
+    /**
+     * Validates one row and applies it.
+     *
+     * @param line The raw CSV line.
+     * @return Why the row was rejected, or null if it was imported.
+     * @throws Exception if a finished batch cannot be written.
+     */
+    private String import_row(String line) throws Exception {
+        split(line);
+        String type = fields.get(0).trim();
+        switch (type) {
+            case "I":
+                finish_investor();
+                String reason = check_investor();
+                skipping = reason != null;
+                return reason;
+            case "A":
+                if (current == null) {
+                    return skipping ? "investor row was rejected" : "asset row before any investor row";
+                }
+                return add_asset();
+            case "B":
+                if (current == null) {
+                    return skipping ? "investor row was rejected" : "bank row before any investor row";
+                }
+                return add_bank_account();
+            default:
+                return "unknown row type '" + type + "'";
+        }
+    }
+
+    /**
+     * Validates an investor row and makes it the current investor.
+     *
+     * @return Why the row was rejected, or null.
+     * @throws Exception if the store cannot be read.
+     */
+    private String check_investor() throws Exception {
+        if (fields.size() != 5) {
+            return "expected 5 fields for an investor, got " + fields.size();
+        }
+        String full_name = fields.get(1).trim();
+        String user_name = fields.get(2).trim();
+        String email = fields.get(3).trim();
+        String password = fields.get(4);
+        if (!checker.checkName(full_name)) {
+            return "invalid full name";
+        }
+        if (user_name.isEmpty()) {
+            return "empty user name";
+        }
+        if (!checker.checkEmail(email)) {
+            return "invalid email";
+        }
+        if (!checker.checkPassword(password)) {
+            return "weak password";
+        }
+        String user_key = user_name.toLowerCase(Locale.ROOT);
+        String email_key = email.toLowerCase(Locale.ROOT);
+        if (pending_user_names.contains(user_key) || store.is_user_name_taken(user_name)) {
+            return "user name already taken";
+        }
+        if (pending_emails.contains(email_key) || store.is_email_taken(email)) {
+            return "email already used";
+        }
+        pending_user_names.add(user_key);
+        pending_emails.add(email_key);
+        current = new Investor.InvestorBuilder()
+                .addFullName(full_name)
+                .addUserName(user_name)
+                .addEmail(email)
+                .addPassword(password)
+                .createAnInvestor();
+        return null;
+    }
+
+    /**
+     * Validates an asset row and adds the asset to the current investor.
+     *
+     * @return Why the row was rejected, or null.
+     */
+    private String add_asset() {
+        if (fields.size() != 7) {
+            return "expected 7 fields for an asset, got " + fields.size();
+        }
+        String name = fields.get(1).trim();
+        if (name.isEmpty()) {
+            return "empty asset name";
+        }
+        long quantity = parse_positive(fields.get(2), Money.QUANTITY_SCALE);
+        if (quantity <= 0) {
+            return "quantity must be a positive number";
+        }
+        long price = parse_positive(fields.get(3), Money.PRICE_SCALE);
+        if (price <= 0) {
+            return "purchase price must be a positive number";
+        }
+        Date purchased = parse_date(fields.get(4));
+        if (purchased == null) {
+            return "invalid purchase date";
+        }
+        String halal = fields.get(6).trim();
+        if (!halal.equalsIgnoreCase("y") && !halal.equalsIgnoreCase("n")) {
+            return "halal must be y or n";
+        }
+        current.userPortfolio.addAsset(new Asset.AssetBuilder()
+                .SetName(name)
+                .SetQuantityUnits(quantity)
+                .SetPurchasePriceUnits(price)
+                .SetPurchaseDate(purchased)
+                .SetAssetType(fields.get(5).trim())
+                .SetIsHalal(halal.equalsIgnoreCase("y"))
+                .SetAssetState()
+                .Build());
+        return null;
+    }
+
+    /**
+     * Validates a bank row and links the account to the current investor.
+     *
+     * @return Why the row was rejected, or null.
+     */
+    private String add_bank_account() {
+        if (fields.size() != 4) {
+            return "expected 4 fields for a bank account, got " + fields.size();
+        }
+        String card_number = fields.get(1).replace(" ", "");
+        String holder = fields.get(2).trim();
+        if (!checker.checkCardNumber(card_number)) {
+            return "card number must be exactly 16 digits";
+        }
+        if (!checker.checkName(holder)) {
+            return "invalid card holder name";
+        }
+        Date expiry = parse_date(fields.get(3));
+        if (expiry == null) {
+            return "invalid expiry date";
+        }
+        current.userPortfolio.linkBankAccount(new BankAccount(card_number, holder, expiry, current.get_id()));
+        return null;
+    }
+
+    /**
+     * Queues the current investor for writing, and writes the batch once it is full.
+     *
+     * @throws Exception if the batch cannot be written.
+     */
+    private void finish_investor() throws Exception {
+        if (current != null) {
+            batch.add(current);
+            current = null;
+            if (batch.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the queued investors to the store in one batch.
+     *
+     * @throws Exception if the batch cannot be written.
+     */
+    private void flush() throws Exception {
+        store.add_new_investors(batch);
+        investors_imported += batch.size();
+        batch.clear();
+        // the store's index knows the written names now; keep only the current investor's
+        pending_user_names.clear();
+        pending_emails.clear();
+        if (current != null) {
+            pending_user_names.add(current.get_user_name().toLowerCase(Locale.ROOT));
+            pending_emails.add(current.get_email().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Splits a CSV line into the reused field list. Fields may be enclosed in double quotes,
+     * in which case they may hold commas and doubled quotes.
+     *
+     * @param line The raw line.
+     */
+    private void split(String line) {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+    }
+
+    /**
+     * @param s     An amount as decimal text.
+     * @param scale The units per whole of the amount.
+     * @return The amount in {@link Money} units, or -1 if it is not a positive number in range.
+     */
+    private static long parse_positive(String s, long scale) {
+        try {
+            long units = Money.parse(s, scale);
+            return units > 0 ? units : -1;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param s A date as text.
+     * @return The date, or null if it is not a real date in yyyy-MM-dd format.
+     */
+    private Date parse_date(String s) {
+        String trimmed = s.trim();
+        if (!checker.checkDate(trimmed)) {
+            return null;
+        }
+        try {
+            return date_format.parse(trimmed);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param s A value for the error file.
+     * @return The value as a quoted CSV field.
+     */
+    private static String quote(String s) {
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,552 @@
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs the menu operations of {@link Main} from text commands instead of prompts, so an
+ * operation file can be replayed without anyone at the terminal.
+ *
+ * One command per line; arguments are separated by spaces and may be put in double quotes.
+ * Blank lines and lines starting with # are skipped.
+ * <pre>
+ * login &lt;user name or email&gt; &lt;password&gt;
+ * add &lt;name&gt; &lt;quantity&gt; &lt;purchase price&gt; &lt;yyyy-MM-dd&gt; &lt;asset type&gt; &lt;y/n&gt;
+ * sell &lt;asset number&gt; &lt;percentage&gt;
+ * sell_lots &lt;name&gt; &lt;quantity&gt; [price] [fifo|lifo]
+ * edit &lt;asset number&gt; name|quantity|price|type|halal &lt;new value&gt;
+ * remove &lt;name&gt; [lot number]
+ * bank &lt;card number&gt; &lt;card holder name&gt; &lt;yyyy-MM-dd&gt;
+ * zakat
+ * pnl
+ * statement &lt;yyyy-MM-dd&gt;
+ * view
+ * flush
+ * </pre>
+ * Asset and lot numbers start at 1, as in the menu. Every command writes one result line
+ * of tab-separated fields: the line number, OK or ERR, the command, and then its results
+ * or the error message. Changed investors are saved together when the batch ends (or at
+ * a flush command), with one write to the store for all of them, unless the session
+ * hands them to a {@link WriteBehindQueue} after every command.
+ *
+ * Sessions of one process share the investors they log in to (see
+ * {@link file_manager#check_out}). A command runs while holding the lock of the
+ * current investor, so concurrent sessions of the same investor take turns.
+ */
+public class CommandSession {
+    private final file_manager the_file_manager;
+    private final TheBank the_bank;
+    private final PrintWriter out;
+    private final ValidationImpl checker = new ValidationImpl();
+    private final SimpleDateFormat date_format = new SimpleDateFormat("yyyy-MM-dd");
+    private final LinkedHashMap<String, Investor> changed = new LinkedHashMap<String, Investor>();
+    private final ArrayList<String> args = new ArrayList<String>();
+    private final WriteBehindQueue saver;
+    private Investor current_investor;
+    private int errors;
+
+    /**
+     * Creates a session with nobody logged in.
+     *
+     * @param the_file_manager The investor store.
+     * @param the_bank         The bank that registers linked accounts.
+     * @param out              Where the result lines are written.
+     */
+    public CommandSession(file_manager the_file_manager, TheBank the_bank, PrintWriter out) {
+        this(the_file_manager, the_bank, out, null);
+    }
+
+    /**
+     * Creates a session with nobody logged in.
+     *
+     * @param the_file_manager  The investor store.
+     * @param the_bank          The bank that registers linked accounts.
+     * @param out               Where the result lines are written.
+     * @param saver             Queue that saves the investor in the background after every
+     *                          command that changes it, or null to save only at flush.
+     */
+    public CommandSession(file_manager the_file_manager, TheBank the_bank, PrintWriter out, WriteBehindQueue saver) {
+        this.the_file_manager = the_file_manager;
+        this.the_bank = the_bank;
+        this.out = out;
+        this.saver = saver;
+        this.date_format.setLenient(false);
+    }
+
+    /**
+     * Runs every command of the input, then saves the changed investors.
+     *
+     * @param in The commands.
+     * @return The number of commands that failed.
+     * @throws Exception if the input cannot be read or the investors cannot be saved.
+     */
+    public int run(BufferedReader in) throws Exception {
+        String line;
+        int number = 0;
+        while ((line = in.readLine()) != null) {
+            number++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            out.println(number + "\t" + execute(trimmed));
+        }
+        flush();
+        out.flush();
+        return errors;
+    }
+
+    /**
+     * Runs one command.
+     *
+     * @param line The command line.
+     * @return The result: OK or ERR, the command, and its tab-separated results or error message.
+     * @throws Exception if the investors cannot be read or saved.
+     */
+    public String execute(String line) throws Exception {
+        split(line);
+        String command = args.get(0).toLowerCase(Locale.ROOT);
+        try {
+            String result;
+            Investor locked = current_investor;
+            if (locked == null || command.equals("login")) {
+                result = dispatch(command);
+            } else {
+                synchronized (locked) {
+                    result = dispatch(command);
+                }
+                if (saver != null) {
+                    for (Investor i : changed.values()) {
+                        saver.mark_dirty(i);
+                    }
+                    changed.clear();
+                }
+            }
+            return result.isEmpty() ? "OK\t" + command : "OK\t" + command + "\t" + result;
+        } catch (IllegalArgumentException | IllegalStateException | ArithmeticException | StaleInvestorException e) {
+            errors++;
+            return "ERR\t" + command + "\t" + e.getMessage();
+        }
+    }
+
+    /**
+     * Runs one command on the current investor.
+     *
+     * @param command The lower-cased command name; its arguments are in the argument list.
+     * @return The tab-separated results, or an empty string.
+     * @throws Exception if the investors cannot be read or saved.
+     */
+    private String dispatch(String command) throws Exception {
+        switch (command) {
+            case "login":
+                return log_in();
+            case "add":
+                return add_asset();
+            case "sell":
+                return sell_from_asset();
+            case "sell_lots":
+                return sell_lots();
+            case "edit":
+                return edit_asset();
+            case "remove":
+                return remove_asset();
+            case "bank":
+                return add_bank_account();
+            case "zakat":
+                expect_args(0);
+                return String.valueOf(portfolio().zakatDue());
+            case "pnl":
+                expect_args(0);
+                Portfolio held = portfolio();
+                return Money.format(held.getRealizedGainUnits(), Money.VALUE_SCALE) + "\t"
+                        + Money.format(held.getUnrealizedGainUnits(), Money.VALUE_SCALE);
+            case "statement":
+                return statement();
+            case "view":
+                expect_args(0);
+                Portfolio p = portfolio();
+                return p.getAssetCount() + "\t" + p.getTotalValue() + "\t" + p.getHalalValue()
+                        + "\t" + p.getBankAccounts().size();
+            case "flush":
+                expect_args(0);
+                return String.valueOf(flush());
+            default:
+                throw new IllegalArgumentException("unknown command");
+        }
+    }
+
+    /**
+     * statement: the current investor's portfolio as of the end of a day, from the ledger.
+     * Changes this session has not flushed yet are not in it.
+     *
+     * @return The number of lots held, total value, halal value and realized gain then.
+     * @throws Exception if the ledger cannot be read.
+     */
+    private String statement() throws Exception {
+        expect_args(1);
+        Date day = parse_date(args.get(1));
+        portfolio();
+        PortfolioLedger.Statement s = the_file_manager.statement_as_of(current_investor.get_id(), PortfolioLedger.endOfDay(day));
+        if (s == null) {
+            throw new IllegalArgumentException("no history on or before " + args.get(1));
+        }
+        int held = 0;
+        for (Asset a : s.getAssets()) {
+            if (a.getQuantityUnits() != 0) {
+                held++;
+            }
+        }
+        return held + "\t" + Money.format(s.getTotalValueUnits(), Money.VALUE_SCALE)
+                + "\t" + Money.format(s.getHalalValueUnits(), Money.VALUE_SCALE)
+                + "\t" + Money.format(s.getRealizedGainUnits(), Money.VALUE_SCALE);
+    }
+
+    /**
+     * Saves every investor changed since the last flush, in one batch, and waits for the
+     * background saves handed to the write-behind queue.
+     *
+     * @return The number of investors saved by this call.
+     * @throws Exception if the investors cannot be saved.
+     */
+    public int flush() throws Exception {
+        int count = changed.size();
+        the_file_manager.update_investors(changed.values());
+        changed.clear();
+        if (saver != null) {
+            saver.flush();
+        }
+        return count;
+    }
+
+    /**
+     * login: makes another investor the current one. The investor is shared with the other
+     * sessions of this process, so unsaved changes made by any of them are kept.
+     *
+     * @return The investor's id.
+     * @throws Exception if the investor cannot be read.
+     */
+    private String log_in() throws Exception {
+        expect_args(2);
+        Investor i = the_file_manager.check_out(args.get(1), args.get(2));
+        if (i == null) {
+            throw new IllegalArgumentException("user name and password are not compatible");
+        }
+        synchronized (i) {
+            synchronized (the_bank) {
+                for (BankAccount b : i.userPortfolio.getBankAccounts()) {
+                    if (the_bank.searchForCard(b.getCardNumber()) == null) {
+                        the_bank.addBankAccount(b);
+                    }
+                }
+            }
+        }
+        current_investor = i;
+        return i.get_id();
+    }
+
+    /**
+     * add: adds an asset to the current investor's portfolio.
+     *
+     * @return The number of the new asset.
+     */
+    private String add_asset() {
+        expect_args(6);
+        Portfolio p = portfolio();
+        String halal = args.get(6).toLowerCase(Locale.ROOT);
+        if (!halal.equals("y") && !halal.equals("n")) {
+            throw new IllegalArgumentException("halal must be y or n");
+        }
+        Date date = parse_date(args.get(4));
+        if (date.after(new Date())) {
+            throw new IllegalArgumentException("cannot have purchase date in the future");
+        }
+        Asset new_asset = new Asset.AssetBuilder()
+                .SetAssetState()
+                .SetAssetType(args.get(5))
+                .SetIsHalal(halal.equals("y"))
+                .SetName(args.get(1))
+                .SetQuantityUnits(parse_amount(args.get(2), Money.QUANTITY_SCALE))
+                .SetPurchasePriceUnits(parse_amount(args.get(3), Money.PRICE_SCALE))
+                .SetPurchaseDate(date)
+                .Build();
+        p.addAsset(new_asset);
+        changed();
+        return String.valueOf(p.getAssetCount());
+    }
+
+    /**
+     * sell: sells a percentage of an asset.
+     *
+     * @return The quantity left.
+     */
+    private String sell_from_asset() {
+        expect_args(2);
+        Portfolio p = portfolio();
+        int index = asset_index(args.get(1), p);
+        float percentage = parse_float(args.get(2));
+        if (!p.sellFromAsset(percentage, index)) {
+            throw new IllegalArgumentException("can't sell over 100% of asset");
+        }
+        changed();
+        return String.valueOf(p.get_asset(index).getQuantity());
+    }
+
+    /**
+     * sell_lots: sells a quantity of a position, the lots sharing a name, in FIFO or LIFO
+     * order (default: the portfolio's lot method), at a price or else at the market price.
+     *
+     * @return The quantity sold, proceeds, cost, realized gain and number of lots taken from.
+     */
+    private String sell_lots() {
+        if (args.size() < 3 || args.size() > 5) {
+            throw new IllegalArgumentException("expected 2 to 4 arguments");
+        }
+        Portfolio p = portfolio();
+        long quantity = parse_amount(args.get(2), Money.QUANTITY_SCALE);
+        long price = 0;
+        LotMethod method = null;
+        for (int i = 3; i < args.size(); i++) {
+            String arg = args.get(i).toLowerCase(Locale.ROOT);
+            if (arg.equals("fifo") || arg.equals("lifo")) {
+                method = LotMethod.valueOf(arg.toUpperCase(Locale.ROOT));
+            } else if (i == 3) {
+                price = parse_amount(arg, Money.PRICE_SCALE);
+            } else {
+                throw new IllegalArgumentException("expected fifo or lifo: " + args.get(i));
+            }
+        }
+        TaxLots.Sale sale = p.sell(args.get(1), quantity, price, method);
+        changed();
+        return Money.format(sale.getQuantityUnits(), Money.QUANTITY_SCALE)
+                + "\t" + Money.format(sale.getProceedsUnits(), Money.VALUE_SCALE)
+                + "\t" + Money.format(sale.getCostUnits(), Money.VALUE_SCALE)
+                + "\t" + Money.format(sale.getRealizedGainUnits(), Money.VALUE_SCALE)
+                + "\t" + sale.getLotCount();
+    }
+
+    /**
+     * edit: changes one property of an asset.
+     *
+     * @return Nothing.
+     */
+    private String edit_asset() {
+        expect_args(3);
+        Portfolio p = portfolio();
+        Asset asset = p.get_asset(asset_index(args.get(1), p));
+        String value = args.get(3);
+        String name = asset.getName(), type = asset.getAssetType();
+        long quantity = asset.getQuantityUnits(), price = asset.getPurchasePriceUnits();
+        boolean halal = asset.IsItHalal();
+        switch (args.get(2).toLowerCase(Locale.ROOT)) {
+            case "name":
+                name = value;
+                break;
+            case "quantity":
+                quantity = parse_amount(value, Money.QUANTITY_SCALE);
+                break;
+            case "price":
+                price = parse_amount(value, Money.PRICE_SCALE);
+                break;
+            case "type":
+                type = value;
+                break;
+            case "halal":
+                halal = value.equalsIgnoreCase("y");
+                break;
+            default:
+                throw new IllegalArgumentException("unknown property " + args.get(2));
+        }
+        asset.updateAssetUnits(name, quantity, price, type, halal);
+        changed();
+        return "";
+    }
+
+    /**
+     * remove: removes an asset by name; the lot number picks one of several lots with the name.
+     *
+     * @return The number of assets left.
+     */
+    private String remove_asset() {
+        if (args.size() != 2 && args.size() != 3) {
+            throw new IllegalArgumentException("expected 1 or 2 arguments");
+        }
+        Portfolio p = portfolio();
+        List<Asset> lots = p.searchForAssets(args.get(1));
+        if (lots.isEmpty()) {
+            throw new IllegalArgumentException("asset not found");
+        }
+        int lot = args.size() == 3 ? parse_int(args.get(2)) : 1;
+        if (lot < 1 || lot > lots.size()) {
+            throw new IllegalArgumentException("no lot " + lot + ", there are " + lots.size());
+        }
+        if (args.size() == 2 && lots.size() > 1) {
+            throw new IllegalArgumentException(lots.size() + " lots share this name, give a lot number");
+        }
+        p.removeAsset(lots.get(lot - 1));
+        changed();
+        return String.valueOf(p.getAssetCount());
+    }
+
+    /**
+     * bank: links a bank account to the current investor and registers it with the bank.
+     *
+     * @return Nothing.
+     */
+    private String add_bank_account() {
+        expect_args(3);
+        Portfolio p = portfolio();
+        String card_number = args.get(1).replace(" ", "");
+        if (!checker.checkCardNumber(card_number)) {
+            throw new IllegalArgumentException("card number must be exactly 16 digits");
+        }
+        if (!checker.checkName(args.get(2))) {
+            throw new IllegalArgumentException("invalid card holder name");
+        }
+        Date expiry = parse_date(args.get(3));
+        if (!expiry.after(new Date())) {
+            throw new IllegalArgumentException("expiry date must be in the future");
+        }
+        BankAccount account = new BankAccount(card_number, args.get(2), expiry, current_investor.get_id());
+        synchronized (the_bank) {
+            if (the_bank.searchForCard(card_number) != null) {
+                throw new IllegalArgumentException("card is already registered");
+            }
+            the_bank.addBankAccount(account);
+        }
+        p.linkBankAccount(account);
+        changed();
+        return "";
+    }
+
+    /**
+     * @return The current investor's portfolio.
+     */
+    private Portfolio portfolio() {
+        if (current_investor == null) {
+            throw new IllegalStateException("not logged in");
+        }
+        return current_investor.userPortfolio;
+    }
+
+    /**
+     * Marks the current investor as changed, to be saved at the next flush.
+     */
+    private void changed() {
+        changed.put(current_investor.get_id(), current_investor);
+    }
+
+    /**
+     * @param count The number of arguments the command takes.
+     */
+    private void expect_args(int count) {
+        if (args.size() - 1 != count) {
+            throw new IllegalArgumentException("expected " + count + " arguments, got " + (args.size() - 1));
+        }
+    }
+
+    /**
+     * @param s An asset number as typed, starting at 1.
+     * @param p The portfolio.
+     * @return The asset's index in the portfolio, starting at 0.
+     */
+    private static int asset_index(String s, Portfolio p) {
+        int number = parse_int(s);
+        if (number < 1 || number > p.getAssetCount()) {
+            throw new IllegalArgumentException("no asset " + number + ", there are " + p.getAssetCount());
+        }
+        return number - 1;
+    }
+
+    /**
+     * @param s A whole number as text.
+     * @return The number.
+     */
+    private static int parse_int(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number: " + s);
+        }
+    }
+
+    /**
+     * @param s A number as text.
+     * @return The number, which must not be negative.
+     */
+    private static float parse_float(String s) {
+        float f;
+        try {
+            f = Float.parseFloat(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number: " + s);
+        }
+        if (!Float.isFinite(f) || f < 0) {
+            throw new IllegalArgumentException("not a valid amount: " + s);
+        }
+        return f;
+    }
+
+    /**
+     * @param s     An amount as decimal text.
+     * @param scale The units per whole of the amount.
+     * @return The amount in {@link Money} units, which must not be negative.
+     */
+    private static long parse_amount(String s, long scale) {
+        long units = Money.parse(s, scale);
+        if (units < 0) {
+            throw new IllegalArgumentException("not a valid amount: " + s);
+        }
+        return units;
+    }
+
+    /**
+     * @param s A date as text.
+     * @return The date.
+     */
+    private Date parse_date(String s) {
+        if (!checker.checkDate(s)) {
+            throw new IllegalArgumentException("invalid date, use yyyy-MM-dd");
+        }
+        try {
+            return date_format.parse(s);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("invalid date " + s);
+        }
+    }
+
+    /**
+     * Splits a command line into the reused argument list. Arguments are separated by
+     * spaces or tabs; double quotes group an argument that contains spaces.
+     *
+     * @param line The command line, not blank.
+     */
+    private void split(String line) {
+        args.clear();
+        StringBuilder arg = new StringBuilder();
+        boolean quoted = false, in_arg = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                in_arg = true;
+            } else if (!quoted && (c == ' ' || c == '\t')) {
+                if (in_arg) {
+                    args.add(arg.toString());
+                    arg.setLength(0);
+                    in_arg = false;
+                }
+            } else {
+                arg.append(c);
+                in_arg = true;
+            }
+        }
+        if (in_arg) {
+            args.add(arg.toString());
+        }
+    }
+}
@@ -0,0 +1,263 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes firm-wide figures over every loaded investor: assets under management at
+ * purchase and market value, halal value, zakat liability, and exposure by asset type and
+ * halal status.
+ *
+ * The investors are split into ranges on a fork/join pool. Each range is summed into its
+ * own {@link Totals} by one thread, with nothing shared, and the partial totals are merged
+ * pairwise as the ranges join, so threads never contend on a common sum. Each portfolio is
+ * read while holding its monitor, so it is seen between two edits, never in the middle of one.
+ */
+public class FirmAggregator {
+    /** Ranges of at most this many investors are summed by one thread without splitting. */
+    static final int LEAF_SIZE = 2048;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an aggregator that runs on the common fork/join pool.
+     */
+    public FirmAggregator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an aggregator that runs on the given pool.
+     *
+     * @param pool The pool to split the work over.
+     */
+    public FirmAggregator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Loads every investor and prints the firm-wide report.
+     * Usage: {@code java FirmAggregator [threads]}
+     *
+     * @param args Optionally the number of threads (default: one per core).
+     * @throws Exception if the investors cannot be read.
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        file_manager fm = new file_manager();
+        fm.get_all_investors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            long start = System.nanoTime();
+            Totals totals = new FirmAggregator(pool).aggregate(fm.all_investors);
+            double millis = (System.nanoTime() - start) / 1e6;
+            System.out.print(totals.report());
+            System.out.printf("Aggregated %d investors on %d threads in %.1f ms%n", totals.getInvestors(), threads, millis);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Sums the figures of the given investors.
+     *
+     * @param investors The investors; a synchronized list is copied under its lock first.
+     * @return The firm-wide totals.
+     */
+    public Totals aggregate(List<Investor> investors) {
+        Investor[] snapshot;
+        synchronized (investors) {
+            snapshot = investors.toArray(new Investor[0]);
+        }
+        ValuationEvent event = new ValuationEvent();
+        event.begin();
+        Totals totals = pool.invoke(new RangeTask(snapshot, 0, snapshot.length));
+        event.kind = "firm";
+        event.portfolios = snapshot.length;
+        event.assets = totals.assets;
+        event.value = totals.getPurchaseValue();
+        event.commit();
+        return totals;
+    }
+
+    /**
+     * Sums one range of investors, splitting it in halves until it is small enough.
+     */
+    private static final class RangeTask extends RecursiveTask<Totals> {
+        private static final long serialVersionUID = 1L;
+        private final Investor[] investors;
+        private final int from;
+        private final int to;
+
+        /**
+         * @param investors All investors.
+         * @param from      First index of the range.
+         * @param to        Index after the last one of the range.
+         */
+        RangeTask(Investor[] investors, int from, int to) {
+            this.investors = investors;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * @return The totals of the range.
+         */
+        @Override
+        protected Totals compute() {
+            if (to - from <= LEAF_SIZE) {
+                Totals totals = new Totals();
+                for (int i = from; i < to; i++) {
+                    totals.add(investors[i].userPortfolio);
+                }
+                return totals;
+            }
+            int middle = (from + to) >>> 1;
+            RangeTask left = new RangeTask(investors, from, middle);
+            left.fork();
+            Totals right = new RangeTask(investors, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Firm-wide (or partial) totals. One instance is only ever written by one thread.
+     * Values are summed exactly in {@link Money} value units, so the result does not depend
+     * on how the work was split.
+     */
+    public static final class Totals {
+        private long investors;
+        private long assets;
+        private long purchaseValue;
+        private long marketValue;
+        private long halalValue;
+        private long zakat;
+        /** Per asset type: purchase value of the halal and of the other holdings. */
+        private final HashMap<String, long[]> exposure = new HashMap<String, long[]>();
+
+        /**
+         * Adds one portfolio.
+         *
+         * @param p The portfolio.
+         */
+        void add(Portfolio p) {
+            investors++;
+            synchronized (p) {
+                purchaseValue += p.getTotalValueUnits();
+                marketValue += p.getMarketValueUnits();
+                halalValue += p.getHalalValueUnits();
+                zakat += p.zakatDueUnits();
+                int count = p.getAssetCount();
+                assets += count;
+                for (int i = 0; i < count; i++) {
+                    Asset a = p.get_asset(i);
+                    long[] byHalal = exposure.computeIfAbsent(typeKey(a.getAssetType()), k -> new long[2]);
+                    byHalal[a.IsItHalal() ? 0 : 1] += a.getValueUnits();
+                }
+            }
+        }
+
+        /**
+         * Adds another partial total to this one.
+         *
+         * @param other Totals of another range.
+         * @return This instance.
+         */
+        Totals merge(Totals other) {
+            investors += other.investors;
+            assets += other.assets;
+            purchaseValue += other.purchaseValue;
+            marketValue += other.marketValue;
+            halalValue += other.halalValue;
+            zakat += other.zakat;
+            for (Map.Entry<String, long[]> e : other.exposure.entrySet()) {
+                long[] mine = exposure.computeIfAbsent(e.getKey(), k -> new long[2]);
+                mine[0] += e.getValue()[0];
+                mine[1] += e.getValue()[1];
+            }
+            return this;
+        }
+
+        /**
+         * @return The number of investors.
+         */
+        public long getInvestors() {
+            return investors;
+        }
+
+        /**
+         * @return The number of assets (lots).
+         */
+        public long getAssets() {
+            return assets;
+        }
+
+        /**
+         * @return Assets under management at purchase price.
+         */
+        public double getPurchaseValue() {
+            return Money.value(purchaseValue);
+        }
+
+        /**
+         * @return Assets under management at the latest market prices.
+         */
+        public double getMarketValue() {
+            return Money.value(marketValue);
+        }
+
+        /**
+         * @return Purchase value of the halal assets.
+         */
+        public double getHalalValue() {
+            return Money.value(halalValue);
+        }
+
+        /**
+         * @return The zakat due over all investors.
+         */
+        public double getZakat() {
+            return Money.value(zakat);
+        }
+
+        /**
+         * @param assetType An asset type, any case.
+         * @param halal     True for the halal holdings, false for the others.
+         * @return The purchase value held in that type and halal status.
+         */
+        public double getExposure(String assetType, boolean halal) {
+            long[] byHalal = exposure.get(typeKey(assetType));
+            return byHalal == null ? 0 : Money.value(byHalal[halal ? 0 : 1]);
+        }
+
+        /**
+         * @return The totals as readable text, exposure sorted by asset type.
+         */
+        public String report() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Investors:           %d%n", investors));
+            sb.append(String.format("Assets:              %d%n", assets));
+            sb.append(String.format("AUM (purchase):      %s%n", Money.format(purchaseValue, Money.VALUE_SCALE)));
+            sb.append(String.format("AUM (market):        %s%n", Money.format(marketValue, Money.VALUE_SCALE)));
+            sb.append(String.format("Halal value:         %s%n", Money.format(halalValue, Money.VALUE_SCALE)));
+            sb.append(String.format("Zakat liability:     %s%n", Money.format(zakat, Money.VALUE_SCALE)));
+            sb.append(String.format("%-20s %20s %20s%n", "Exposure by type", "halal", "not halal"));
+            for (Map.Entry<String, long[]> e : new TreeMap<String, long[]>(exposure).entrySet()) {
+                sb.append(String.format("%-20s %20s %20s%n", e.getKey(),
+                        Money.format(e.getValue()[0], Money.VALUE_SCALE), Money.format(e.getValue()[1], Money.VALUE_SCALE)));
+            }
+            return sb.toString();
+        }
+
+        /**
+         * @param assetType An asset type.
+         * @return The key it is grouped under.
+         */
+        private static String typeKey(String assetType) {
+            return assetType == null ? "" : assetType.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+}
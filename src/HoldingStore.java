@@ -0,0 +1,261 @@
+import java.util.Arrays;
+
+/**
+ * Column-oriented copy of a portfolio's holdings: one primitive array per field instead
+ * of one object per asset. Quantities and prices are long columns in {@link Money} units,
+ * halal status is a bitset and the asset state is a byte column holding the enum ordinal.
+ *
+ * Valuation, zakat and filtered sums loop over these arrays without boxing or allocating,
+ * and return exact values in {@link Money} value units.
+ * The sums keep four independent accumulators so the JIT can overlap the additions.
+ *
+ * Rows are addressed by slot and kept in the order the assets were added, so a slot is
+ * also the asset's place in its portfolio's list. Removing a row only empties it, in O(1);
+ * an empty row holds nothing and adds nothing to the sums. {@link #compact()} closes the
+ * gaps and tells every moved asset its new slot; the owner calls it once enough rows are
+ * empty, so removals cost O(1) amortized.
+ */
+final class HoldingStore {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] quantity;
+    private long[] price;
+    private long[] halal;
+    private byte[] state;
+    private Asset[] assets;
+    private int size;
+    private int removed;
+
+    /**
+     * Creates an empty store.
+     */
+    public HoldingStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store with room for the given number of rows.
+     *
+     * @param capacity Initial number of rows.
+     */
+    public HoldingStore(int capacity) {
+        int c = Math.max(capacity, INITIAL_CAPACITY);
+        this.quantity = new long[c];
+        this.price = new long[c];
+        this.halal = new long[(c + 63) >>> 6];
+        this.state = new byte[c];
+        this.assets = new Asset[c];
+    }
+
+    /**
+     * Adds a row for the asset and records its slot in it.
+     *
+     * @param a The asset.
+     */
+    public void add(Asset a) {
+        if (size == quantity.length) {
+            grow();
+        }
+        assets[size] = a;
+        a.setHoldingSlot(size);
+        set(size, a);
+        size++;
+    }
+
+    /**
+     * Copies the asset's current fields into its row.
+     *
+     * @param a An asset held in this store.
+     */
+    public void update(Asset a) {
+        set(a.getHoldingSlot(), a);
+    }
+
+    /**
+     * Empties the asset's row. The other rows keep their slots.
+     *
+     * @param a An asset held in this store.
+     */
+    public void remove(Asset a) {
+        int slot = a.getHoldingSlot();
+        assets[slot] = null;
+        quantity[slot] = 0;
+        price[slot] = 0;
+        state[slot] = 0;
+        setHalal(slot, false);
+        a.setHoldingSlot(-1);
+        removed++;
+    }
+
+    /**
+     * Moves the rows down over the empty ones, keeping their order, and tells every moved
+     * asset its new slot.
+     */
+    public void compact() {
+        int to = 0;
+        for (int from = 0; from < size; from++) {
+            Asset a = assets[from];
+            if (a == null) {
+                continue;
+            }
+            if (to != from) {
+                assets[to] = a;
+                quantity[to] = quantity[from];
+                price[to] = price[from];
+                state[to] = state[from];
+                setHalal(to, isHalal(from));
+                a.setHoldingSlot(to);
+            }
+            to++;
+        }
+        for (int i = to; i < size; i++) {
+            assets[i] = null;
+            quantity[i] = 0;
+            price[i] = 0;
+            state[i] = 0;
+            setHalal(i, false);
+        }
+        size = to;
+        removed = 0;
+    }
+
+    /**
+     * @return The number of assets held.
+     */
+    public int size() {
+        return size - removed;
+    }
+
+    /**
+     * @return The number of slots in use, empty rows included.
+     */
+    public int slots() {
+        return size;
+    }
+
+    /**
+     * @return The number of empty rows.
+     */
+    public int removed() {
+        return removed;
+    }
+
+    /**
+     * @return The value of all rows at purchase price, in value units.
+     */
+    public long totalValue() {
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        long[] q = quantity, p = price;
+        int n = size, i = 0;
+        for (; i + 3 < n; i += 4) {
+            s0 += Money.valueOf(q[i], p[i]);
+            s1 += Money.valueOf(q[i + 1], p[i + 1]);
+            s2 += Money.valueOf(q[i + 2], p[i + 2]);
+            s3 += Money.valueOf(q[i + 3], p[i + 3]);
+        }
+        for (; i < n; i++) {
+            s0 += Money.valueOf(q[i], p[i]);
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Sums the value of the rows with the given halal status.
+     *
+     * @param halalStatus True for halal rows, false for the others.
+     * @return The value of the matching rows, in value units.
+     */
+    public long valueWhereHalal(boolean halalStatus) {
+        long sum = 0;
+        long[] q = quantity, p = price;
+        int words = (size + 63) >>> 6;
+        for (int w = 0; w < words; w++) {
+            long bits = halalStatus ? halal[w] : ~halal[w];
+            if (w == words - 1 && (size & 63) != 0) {
+                bits &= (1L << (size & 63)) - 1;
+            }
+            int base = w << 6;
+            while (bits != 0) {
+                int i = base + Long.numberOfTrailingZeros(bits);
+                sum += Money.valueOf(q[i], p[i]);
+                bits &= bits - 1;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Sums the value of the rows in the given state.
+     *
+     * @param s The asset state.
+     * @return The value of the matching rows, in value units.
+     */
+    public long valueInState(state s) {
+        byte wanted = (byte) s.ordinal();
+        long sum = 0;
+        long[] q = quantity, p = price;
+        byte[] st = state;
+        for (int i = 0; i < size; i++) {
+            if (st[i] == wanted) {
+                sum += Money.valueOf(q[i], p[i]);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Calculates the zakat due on the halal rows.
+     *
+     * @param numerator   Numerator of the zakat rate, e.g. 25.
+     * @param denominator Denominator of the zakat rate, e.g. 1000.
+     * @return The zakat due, in value units.
+     */
+    public long zakat(long numerator, long denominator) {
+        return Money.share(valueWhereHalal(true), numerator, denominator);
+    }
+
+    /**
+     * Writes an asset's fields into a row.
+     *
+     * @param slot The row.
+     * @param a    The asset.
+     */
+    private void set(int slot, Asset a) {
+        quantity[slot] = a.getQuantityUnits();
+        price[slot] = a.getPurchasePriceUnits();
+        state[slot] = a.getAssetState() == null ? 0 : (byte) a.getAssetState().ordinal();
+        setHalal(slot, a.IsItHalal());
+    }
+
+    /**
+     * @param slot A row.
+     * @return The halal bit of the row.
+     */
+    private boolean isHalal(int slot) {
+        return (halal[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * @param slot  A row.
+     * @param value The new halal bit of the row.
+     */
+    private void setHalal(int slot, boolean value) {
+        if (value) {
+            halal[slot >>> 6] |= 1L << slot;
+        } else {
+            halal[slot >>> 6] &= ~(1L << slot);
+        }
+    }
+
+    /**
+     * Doubles the capacity of every column.
+     */
+    private void grow() {
+        int c = quantity.length * 2;
+        quantity = Arrays.copyOf(quantity, c);
+        price = Arrays.copyOf(price, c);
+        halal = Arrays.copyOf(halal, (c + 63) >>> 6);
+        state = Arrays.copyOf(state, c);
+        assets = Arrays.copyOf(assets, c);
+    }
+}
@@ -8,12 +8,14 @@ import java.util.UUID;
  * Includes user credentials and profile management.
  */
 public class Investor implements Serializable {
+    private static final long serialVersionUID = -3312007465516969143L;
     private String name;
     private String userName;
     private String email;
     private String password;
     public  Portfolio userPortfolio;
     private String id;
+    private long version;
 
     /**
      * Default constructor for Investor.
@@ -43,6 +45,52 @@ public class Investor implements Serializable {
         return this.userName;
     }
 
+    /**
+     * Returns the email of the investor.
+     *
+     * @return The investor's email.
+     */
+    public String get_email(){
+        return this.email;
+    }
+
+    /**
+     * Returns the unique id of the investor.
+     *
+     * @return The investor's id.
+     */
+    public String get_id(){
+        return this.id;
+    }
+
+    /**
+     * Returns the version of the investor's stored record. It goes up by one every time
+     * the investor is saved, so a save based on an older copy can be detected.
+     *
+     * @return The investor's version.
+     */
+    public long get_version(){
+        return this.version;
+    }
+
+    /**
+     * Sets the version of the investor's stored record. Only the store sets it.
+     *
+     * @param version The new version.
+     */
+    void set_version(long version){
+        this.version = version;
+    }
+
+    /**
+     * Returns the password of the investor, for storing it with the investor's record.
+     *
+     * @return The investor's password.
+     */
+    String get_password(){
+        return this.password;
+    }
+
     /**
      * Verifies login credentials using username or email.
      *
@@ -0,0 +1,153 @@
+/**
+ * The part of an investor record that is read at startup: id, user name, email,
+ * password, version, and where the full record (with its portfolio) is stored.
+ * The full record is only read when the investor logs in.
+ */
+final class InvestorHeader {
+    static final byte IN_SNAPSHOT = 0;
+    static final byte IN_LOG = 1;
+    static final byte RESIDENT = 2;
+
+    private final String id;
+    private final String user_name;
+    private final String email;
+    private final String password;
+    private final long version;
+    private final byte source;
+    private final long offset;
+    private final int length;
+    private final byte[] resident_payload;
+
+    /**
+     * Constructs a header for a record stored in a file.
+     *
+     * @param id        The investor's id.
+     * @param user_name The investor's user name.
+     * @param email     The investor's email.
+     * @param password  The investor's password.
+     * @param version   The version of the stored investor.
+     * @param source    IN_SNAPSHOT or IN_LOG.
+     * @param offset    Offset of the serialized investor in that file.
+     * @param length    Length of the serialized investor in bytes.
+     */
+    public InvestorHeader(String id, String user_name, String email, String password, long version,
+                          byte source, long offset, int length) {
+        this.id = id;
+        this.user_name = user_name;
+        this.email = email;
+        this.password = password;
+        this.version = version;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.resident_payload = null;
+    }
+
+    /**
+     * Constructs a header for an investor that is only held in memory,
+     * such as one read from an investor file in the old single-list format.
+     * The investor is kept as serialized bytes, not as the object: every read gets its own
+     * copy, and a compaction writes the investor as it was read, whatever callers have
+     * done to their copies since.
+     *
+     * @param investor The fully loaded investor.
+     * @param payload  The investor serialized by {@link InvestorLog#serialize(Investor)}.
+     */
+    public InvestorHeader(Investor investor, byte[] payload) {
+        this.id = investor.get_id();
+        this.user_name = investor.get_user_name();
+        this.email = investor.get_email();
+        this.password = investor.get_password();
+        this.version = investor.get_version();
+        this.source = RESIDENT;
+        this.offset = -1;
+        this.length = payload.length;
+        this.resident_payload = payload;
+    }
+
+    /**
+     * Verifies login credentials the same way {@link Investor#log_in(String, String)} does.
+     *
+     * @param user_name_or_email The input username or email.
+     * @param password           The input password.
+     * @return True if credentials match; false otherwise.
+     */
+    public boolean log_in(String user_name_or_email, String password) {
+        return (user_name_or_email.equalsIgnoreCase(this.user_name) || user_name_or_email.equalsIgnoreCase(this.email))
+                && password.equals(this.password);
+    }
+
+    /**
+     * Returns a copy of this header pointing at a new location of the same record.
+     *
+     * @param source The file the record is now in.
+     * @param offset The new offset of the serialized investor.
+     * @return The moved header.
+     */
+    public InvestorHeader moved_to(byte source, long offset) {
+        return new InvestorHeader(id, user_name, email, password, version, source, offset, length);
+    }
+
+    /**
+     * @return The investor's id.
+     */
+    public String get_id() {
+        return id;
+    }
+
+    /**
+     * @return The investor's user name.
+     */
+    public String get_user_name() {
+        return user_name;
+    }
+
+    /**
+     * @return The investor's email.
+     */
+    public String get_email() {
+        return email;
+    }
+
+    /**
+     * @return The investor's password.
+     */
+    String get_password() {
+        return password;
+    }
+
+    /**
+     * @return The version of the stored investor.
+     */
+    public long get_version() {
+        return version;
+    }
+
+    /**
+     * @return IN_SNAPSHOT, IN_LOG or RESIDENT.
+     */
+    public byte get_source() {
+        return source;
+    }
+
+    /**
+     * @return Offset of the serialized investor in its file.
+     */
+    public long get_offset() {
+        return offset;
+    }
+
+    /**
+     * @return Length of the serialized investor in bytes.
+     */
+    public int get_length() {
+        return length;
+    }
+
+    /**
+     * @return The serialized investor for RESIDENT headers, otherwise null.
+     */
+    public byte[] get_resident_payload() {
+        return resident_payload;
+    }
+}
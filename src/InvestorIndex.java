@@ -0,0 +1,218 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of investor headers by lower-cased user name and email.
+ * Lookups cost the same no matter how many investors are stored. Neither user names nor
+ * emails are unique in older stores, so each key holds the list of investors that have it,
+ * in the order they were stored. A Bloom filter over
+ * user names rejects most "is this name free?" questions without touching the maps.
+ * Writers are serialized; lookups take no lock. A rebuild fills new maps and then swaps
+ * them in, so a lookup never sees a half-built index. The lists are never changed once
+ * published; a writer replaces the whole list.
+ */
+class InvestorIndex {
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private volatile ConcurrentHashMap<String, List<InvestorHeader>> by_user_name = new ConcurrentHashMap<String, List<InvestorHeader>>();
+    private volatile ConcurrentHashMap<String, List<InvestorHeader>> by_email = new ConcurrentHashMap<String, List<InvestorHeader>>();
+    private volatile ConcurrentHashMap<String, InvestorHeader> by_id = new ConcurrentHashMap<String, InvestorHeader>();
+    private volatile BloomFilter taken_names;
+    private int bloom_capacity;
+
+    /**
+     * Creates an empty index.
+     */
+    public InvestorIndex() {
+        this.bloom_capacity = 1024;
+        this.taken_names = new BloomFilter(bloom_capacity, FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * Replaces the contents of the index with the given investors.
+     *
+     * @param investors Headers of all stored investors, in the order they were stored.
+     */
+    public synchronized void rebuild(Collection<InvestorHeader> investors) {
+        ConcurrentHashMap<String, List<InvestorHeader>> users = new ConcurrentHashMap<String, List<InvestorHeader>>();
+        ConcurrentHashMap<String, List<InvestorHeader>> emails = new ConcurrentHashMap<String, List<InvestorHeader>>();
+        ConcurrentHashMap<String, InvestorHeader> ids = new ConcurrentHashMap<String, InvestorHeader>();
+        int capacity = Math.max(1024, investors.size() * 2);
+        BloomFilter names = new BloomFilter(capacity, FALSE_POSITIVE_RATE);
+        for (InvestorHeader i : investors) {
+            ids.put(i.get_id(), i);
+            add(users, key(i.get_user_name()), i);
+            if (i.get_email() != null) {
+                add(emails, key(i.get_email()), i);
+            }
+            names.add(key(i.get_user_name()));
+        }
+        this.bloom_capacity = capacity;
+        this.taken_names = names;
+        this.by_user_name = users;
+        this.by_email = emails;
+        this.by_id = ids;
+    }
+
+    /**
+     * Adds an investor, or replaces the indexed copy with the same id.
+     * Keys of the old copy are dropped, so renamed user names and emails are followed.
+     * A copy that keeps its key keeps its place in that key's list.
+     *
+     * @param investor The header of the investor to index.
+     */
+    public synchronized void put(InvestorHeader investor) {
+        // filter first: a lookup that finds the name in the map must also pass the filter
+        taken_names.add(key(investor.get_user_name()));
+        InvestorHeader old = by_id.put(investor.get_id(), investor);
+        if (old != null) {
+            if (!key(old.get_user_name()).equals(key(investor.get_user_name()))) {
+                remove(by_user_name, key(old.get_user_name()), old.get_id());
+            }
+            if (old.get_email() != null && (investor.get_email() == null
+                    || !key(old.get_email()).equals(key(investor.get_email())))) {
+                remove(by_email, key(old.get_email()), old.get_id());
+            }
+        }
+        add(by_user_name, key(investor.get_user_name()), investor);
+        if (investor.get_email() != null) {
+            add(by_email, key(investor.get_email()), investor);
+        }
+        if (by_id.size() > bloom_capacity) {
+            BloomFilter names = new BloomFilter(bloom_capacity * 2, FALSE_POSITIVE_RATE);
+            for (InvestorHeader i : by_id.values()) {
+                names.add(key(i.get_user_name()));
+            }
+            bloom_capacity *= 2;
+            taken_names = names;
+        }
+    }
+
+    /**
+     * Finds the investor whose user name or email, ignoring case, and password match.
+     * Several investors may share a user name or an email, so the password is checked
+     * against each of them. User names are free-form, so one investor's user name may be
+     * another's email; the investors with that user name are tried first, then the ones
+     * with that email, each in the order they were stored.
+     *
+     * @param user_name_or_email The user name or email typed at login.
+     * @param password           The password typed at login.
+     * @return The investor's header, or null if none matches.
+     */
+    public InvestorHeader find(String user_name_or_email, String password) {
+        String k = key(user_name_or_email);
+        InvestorHeader found = first_match(by_user_name.get(k), user_name_or_email, password);
+        return found != null ? found : first_match(by_email.get(k), user_name_or_email, password);
+    }
+
+    /**
+     * @param candidates         The investors under one key, or null.
+     * @param user_name_or_email The user name or email typed at login.
+     * @param password           The password typed at login.
+     * @return The first candidate whose credentials match, or null.
+     */
+    private static InvestorHeader first_match(List<InvestorHeader> candidates, String user_name_or_email, String password) {
+        if (candidates != null) {
+            for (InvestorHeader h : candidates) {
+                if (h.log_in(user_name_or_email, password)) {
+                    return h;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether a user name is already used, ignoring case.
+     *
+     * @param user_name The user name to check.
+     * @return True if another investor has this user name.
+     */
+    public boolean is_user_name_taken(String user_name) {
+        String k = key(user_name);
+        return taken_names.mightContain(k) && by_user_name.containsKey(k);
+    }
+
+    /**
+     * Checks whether an email is already used, ignoring case.
+     *
+     * @param email The email to check.
+     * @return True if another investor has this email.
+     */
+    public boolean is_email_taken(String email) {
+        return by_email.containsKey(key(email));
+    }
+
+    /**
+     * @return The number of indexed investors.
+     */
+    public int size() {
+        return by_id.size();
+    }
+
+    /**
+     * Adds an investor to the list under a key, or replaces the copy with the same id in place.
+     *
+     * @param map      The map to change.
+     * @param k        The key.
+     * @param investor The investor's header.
+     */
+    private static void add(ConcurrentHashMap<String, List<InvestorHeader>> map, String k, InvestorHeader investor) {
+        List<InvestorHeader> old = map.get(k);
+        ArrayList<InvestorHeader> list = new ArrayList<InvestorHeader>(old == null ? 1 : old.size() + 1);
+        boolean replaced = false;
+        if (old != null) {
+            for (InvestorHeader h : old) {
+                if (h.get_id().equals(investor.get_id())) {
+                    list.add(investor);
+                    replaced = true;
+                } else {
+                    list.add(h);
+                }
+            }
+        }
+        if (!replaced) {
+            list.add(investor);
+        }
+        map.put(k, Collections.unmodifiableList(list));
+    }
+
+    /**
+     * Removes an investor from the list under a key, and the key once its list is empty.
+     *
+     * @param map The map to change.
+     * @param k   The key.
+     * @param id  The investor's id.
+     */
+    private static void remove(ConcurrentHashMap<String, List<InvestorHeader>> map, String k, String id) {
+        List<InvestorHeader> old = map.get(k);
+        if (old == null) {
+            return;
+        }
+        ArrayList<InvestorHeader> list = new ArrayList<InvestorHeader>(old.size());
+        for (InvestorHeader h : old) {
+            if (!h.get_id().equals(id)) {
+                list.add(h);
+            }
+        }
+        if (list.isEmpty()) {
+            map.remove(k);
+        } else {
+            map.put(k, Collections.unmodifiableList(list));
+        }
+    }
+
+    /**
+     * Normalizes a user name or email for lookups.
+     *
+     * @param s The raw value.
+     * @return The lower-cased value, or an empty string for null.
+     */
+    private static String key(String s) {
+        return s == null ? "" : s.toLowerCase(Locale.ROOT);
+    }
+}
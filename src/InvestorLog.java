@@ -0,0 +1,473 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only log of investor changes.
+ * Every add or update is written as one record at the end of the file, so the cost of
+ * a write does not depend on how many investors are already stored. The current state
+ * is rebuilt by replaying the records in order.
+ *
+ * Layout: a header (magic, version, epoch) followed by records of
+ * [operation byte][id, user name, email, password][investor version][payload length][serialized Investor].
+ * The identity fields let a reader build an {@link InvestorHeader} without deserializing
+ * the payload.
+ * The epoch goes up by one each time the log is rotated after a snapshot, which tells
+ * a reader whether the snapshot it loaded was taken from this log or the previous one.
+ */
+class InvestorLog {
+    static final byte OP_ADD = 1;
+    static final byte OP_UPDATE = 2;
+    /** High bits of the operation byte, set in every record. */
+    private static final int RECORD_FLAGS = 0xC0;
+
+    private static final int MAGIC = 0x50494C47; // "PILG"
+    private static final short VERSION = 2;
+    static final int HEADER_SIZE = 4 + 2 + 8;
+
+    private final File file;
+    private boolean recovered;
+
+    /**
+     * Creates a log backed by the given file. The file is created on the first append.
+     *
+     * @param file The log file.
+     */
+    public InvestorLog(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return The log file.
+     */
+    public File get_file() {
+        return file;
+    }
+
+    /**
+     * Appends one record for the given investor and forces it to disk.
+     *
+     * @param op       OP_ADD or OP_UPDATE.
+     * @param investor The investor to record.
+     * @return A header pointing at the written record.
+     * @throws IOException if the log cannot be written.
+     */
+    public InvestorHeader append(byte op, Investor investor) throws IOException {
+        return append_all(op, Collections.singletonList(investor)).get(0);
+    }
+
+    /**
+     * Appends one record per investor with a single write and a single fsync, so a batch
+     * costs one disk flush however many investors it holds.
+     *
+     * @param op        OP_ADD or OP_UPDATE.
+     * @param investors The investors to record, in order.
+     * @return Headers pointing at the written records, in the same order.
+     * @throws IOException if the log cannot be written.
+     */
+    public synchronized List<InvestorHeader> append_all(byte op, List<Investor> investors) throws IOException {
+        if (!recovered) {
+            recover();
+        }
+        PersistenceEvent event = new PersistenceEvent();
+        event.begin();
+        boolean timed = event.isEnabled();
+        long start = file.length();
+        ByteArrayOutputStream records = new ByteArrayOutputStream(investors.size() * 1024);
+        DataOutputStream out = new DataOutputStream(records);
+        if (start == 0) {
+            writeHeader(out, 0);
+        }
+        ArrayList<InvestorHeader> written = new ArrayList<InvestorHeader>(investors.size());
+        for (Investor investor : investors) {
+            // hold the investor still while it is written; threads change it under this monitor
+            synchronized (investor) {
+                long serialize_start = timed ? System.nanoTime() : 0;
+                byte[] payload = serialize(investor);
+                if (timed) {
+                    event.serializationTime += System.nanoTime() - serialize_start;
+                }
+                write_record_prefix(out, op, investor, payload.length);
+                written.add(new InvestorHeader(investor.get_id(), investor.get_user_name(), investor.get_email(),
+                        investor.get_password(), investor.get_version(), InvestorHeader.IN_LOG,
+                        start + records.size(), payload.length));
+                out.write(payload);
+            }
+        }
+        try (FileOutputStream fos = new FileOutputStream(file, true)) {
+            records.writeTo(fos);
+            fos.getFD().sync();
+        }
+        event.operation = op == OP_ADD ? "add" : "update";
+        event.records = investors.size();
+        event.bytesWritten = records.size();
+        event.commit();
+        return written;
+    }
+
+    /**
+     * Returns the epoch of the log file, or 0 if it does not exist yet.
+     *
+     * @return The current epoch.
+     * @throws IOException if the header cannot be read.
+     */
+    public synchronized long epoch() throws IOException {
+        if (file.length() == 0) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return readHeader(in);
+        }
+    }
+
+    /**
+     * @return The current size of the log file in bytes.
+     */
+    public synchronized long length() {
+        return file.length();
+    }
+
+    /**
+     * Replays the records written after a snapshot on top of the headers loaded from it,
+     * keyed by investor id. Payloads are skipped, not deserialized. An incomplete record at
+     * the end of the file (an interrupted append) is ignored.
+     * Appends may run meanwhile; the caller makes sure no rotation does.
+     *
+     * @param state         The headers loaded from the snapshot; updated in place.
+     * @param snapshotEpoch The log epoch the snapshot was taken from.
+     * @param coveredOffset The log offset up to which the snapshot already holds the changes.
+     * @param upTo          Offset to stop at, or -1 to read to the end of the log.
+     * @throws IOException if the log cannot be read or does not belong to the snapshot.
+     */
+    public void replay(Map<String, InvestorHeader> state, long snapshotEpoch, long coveredOffset, long upTo)
+            throws IOException {
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return;
+        }
+        try (RecordReader reader = new RecordReader(file, InvestorHeader.IN_LOG)) {
+            long epoch = readHeader(reader.in);
+            long start;
+            if (epoch == snapshotEpoch) {
+                start = Math.max(coveredOffset, HEADER_SIZE);
+            } else if (epoch == snapshotEpoch + 1) {
+                // rotated after the snapshot was written: every record is newer
+                start = HEADER_SIZE;
+            } else {
+                throw new IOException("Investor log epoch " + epoch + " does not follow snapshot epoch " + snapshotEpoch);
+            }
+            reader.in.skipNBytes(start - reader.position());
+            while ((upTo < 0 || reader.position() < upTo) && reader.next()) {
+                if (reader.op == OP_ADD) {
+                    state.put(reader.header.get_id(), reader.header);
+                } else if (reader.op == OP_UPDATE) {
+                    state.replace(reader.header.get_id(), reader.header);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a new log epoch once a snapshot holds everything up to the given offset.
+     * Records written after that offset are copied into a new file under the next epoch,
+     * which then replaces the log with an atomic rename. Appends wait while this runs.
+     *
+     * @param coveredOffset The offset the snapshot covers.
+     * @return How far the copied records moved towards the start of the file.
+     * @throws IOException if the new log cannot be written.
+     */
+    public synchronized long rotate(long coveredOffset) throws IOException {
+        if (!recovered) {
+            recover();
+        }
+        long shift = 0;
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            if (file.length() == 0) {
+                writeHeader(out, 1);
+            } else {
+                try (DataInputStream tail = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                    writeHeader(out, readHeader(tail) + 1);
+                    long start = Math.max(coveredOffset, HEADER_SIZE);
+                    tail.skipNBytes(start - HEADER_SIZE);
+                    tail.transferTo(out);
+                    shift = start - HEADER_SIZE;
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return shift;
+    }
+
+    /**
+     * Cuts off an incomplete record left at the end of the log by an interrupted append,
+     * so that new records are not written after unreadable bytes.
+     * Only field lengths are read; payloads are skipped.
+     *
+     * @throws IOException if the log cannot be read or truncated.
+     */
+    private void recover() throws IOException {
+        recovered = true;
+        if (!file.exists()) {
+            return;
+        }
+        long valid = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            if (length >= HEADER_SIZE) {
+                raf.seek(0);
+                readHeader(raf);
+                valid = HEADER_SIZE;
+                try {
+                    while (valid < length) {
+                        raf.seek(valid);
+                        raf.readUnsignedByte();
+                        long position = valid + 1;
+                        for (int field = 0; field < 4; field++) {
+                            raf.seek(position);
+                            position += 2 + raf.readUnsignedShort();
+                        }
+                        position += 8;
+                        raf.seek(position);
+                        long end = position + 4 + raf.readInt();
+                        if (end > length) {
+                            break;
+                        }
+                        valid = end;
+                    }
+                } catch (EOFException torn) {
+                    // valid already points past the last complete record
+                }
+            }
+            if (valid < length) {
+                raf.setLength(valid);
+            }
+        }
+    }
+
+    /**
+     * Writes the log header.
+     *
+     * @param out   Stream positioned at the start of the log.
+     * @param epoch The epoch of the new log.
+     * @throws IOException if the header cannot be written.
+     */
+    private static void writeHeader(DataOutputStream out, long epoch) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(epoch);
+    }
+
+    /**
+     * Reads and checks the log header.
+     *
+     * @param in Input positioned at the start of the log.
+     * @return The epoch.
+     * @throws IOException if the header is missing or unknown.
+     */
+    private long readHeader(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an investor log: " + file);
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported investor log version " + version);
+        }
+        return in.readLong();
+    }
+
+    /**
+     * Writes everything of a record that comes before its payload.
+     * Shared by the log and the snapshot, which use the same record layout.
+     *
+     * @param out            Stream to write to.
+     * @param op             OP_ADD or OP_UPDATE.
+     * @param investor       The investor the record is for.
+     * @param payload_length Length of the serialized investor.
+     * @throws IOException if the stream cannot be written.
+     */
+    static void write_record_prefix(DataOutputStream out, byte op, Investor investor, int payload_length) throws IOException {
+        write_record_prefix(out, op, investor.get_id(), investor.get_user_name(), investor.get_email(),
+                investor.get_password(), investor.get_version(), payload_length);
+    }
+
+    /**
+     * Writes everything of a record that comes before its payload.
+     *
+     * @param out            Stream to write to.
+     * @param op             OP_ADD or OP_UPDATE.
+     * @param id             The investor's id.
+     * @param user_name      The investor's user name.
+     * @param email          The investor's email.
+     * @param password       The investor's password.
+     * @param version        The investor's version.
+     * @param payload_length Length of the serialized investor.
+     * @throws IOException if the stream cannot be written.
+     */
+    static void write_record_prefix(DataOutputStream out, byte op, String id, String user_name, String email,
+                                    String password, long version, int payload_length) throws IOException {
+        out.writeByte(op | RECORD_FLAGS);
+        out.writeUTF(id == null ? "" : id);
+        out.writeUTF(user_name == null ? "" : user_name);
+        out.writeUTF(email == null ? "" : email);
+        out.writeUTF(password == null ? "" : password);
+        out.writeLong(version);
+        out.writeInt(payload_length);
+    }
+
+    /**
+     * Reads the serialized investor a header points at.
+     *
+     * @param file   The file holding the record.
+     * @param offset Offset of the payload.
+     * @param length Length of the payload.
+     * @return The payload bytes.
+     * @throws IOException if the file cannot be read.
+     */
+    static byte[] read_payload(File file, long offset, int length) throws IOException {
+        byte[] payload = new byte[length];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(offset);
+            raf.readFully(payload);
+        }
+        return payload;
+    }
+
+    /**
+     * Serializes an investor into a standalone byte array.
+     *
+     * @param investor The investor to serialize.
+     * @return The serialized bytes.
+     * @throws IOException if serialization fails.
+     */
+    static byte[] serialize(Investor investor) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(investor);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads an investor back from bytes produced by {@link #serialize(Investor)}.
+     *
+     * @param payload The serialized bytes.
+     * @return The investor.
+     * @throws IOException            if the bytes are not a serialized investor.
+     * @throws ClassNotFoundException if the bytes reference an unknown class.
+     */
+    static Investor deserialize(byte[] payload) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return (Investor) ois.readObject();
+        }
+    }
+
+    /**
+     * Reads records one by one from a log or snapshot file, keeping track of the file
+     * position so every record's header can point at its payload.
+     */
+    static class RecordReader implements Closeable {
+        final DataInputStream in;
+        private final CountingInputStream counter;
+        private final byte source;
+        byte op;
+        InvestorHeader header;
+
+        /**
+         * Opens a file for reading records.
+         *
+         * @param file   The file to read.
+         * @param source IN_SNAPSHOT or IN_LOG, stored in every header read.
+         * @throws IOException if the file cannot be opened.
+         */
+        RecordReader(File file, byte source) throws IOException {
+            this.counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            this.in = new DataInputStream(counter);
+            this.source = source;
+        }
+
+        /**
+         * @return The current position in the file.
+         */
+        long position() {
+            return counter.position;
+        }
+
+        /**
+         * Reads the next record into {@link #op} and {@link #header}.
+         *
+         * @return False at the end of the file or at an incomplete last record.
+         * @throws IOException if the file cannot be read or holds a record of an unknown layout.
+         */
+        boolean next() throws IOException {
+            int raw = in.read();
+            if (raw < 0) {
+                return false;
+            }
+            if ((raw & RECORD_FLAGS) != RECORD_FLAGS) {
+                throw new IOException("Unsupported investor record " + raw + " at " + (position() - 1));
+            }
+            try {
+                op = (byte) (raw & ~RECORD_FLAGS);
+                String id = in.readUTF();
+                String user_name = in.readUTF();
+                String email = in.readUTF();
+                String password = in.readUTF();
+                long version = in.readLong();
+                int length = in.readInt();
+                header = new InvestorHeader(id, user_name, email, password, version, source, position(), length);
+                in.skipNBytes(length);
+                return true;
+            } catch (EOFException torn) {
+                return false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Input stream that counts the bytes read or skipped through it.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long position;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                position++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            position += skipped;
+            return skipped;
+        }
+    }
+}
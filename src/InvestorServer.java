@@ -0,0 +1,200 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves many users from one process over a simple line protocol on a TCP socket.
+ * Each connection is a {@link CommandSession}: the client sends the same commands as in
+ * batch mode, one per line, and gets one result line back for each
+ * (OK or ERR, the command, then results or the error message). "quit" closes the connection.
+ *
+ * All sessions share one investor store and one bank. Every changed investor is handed to
+ * a shared {@link WriteBehindQueue} after the command that changed it, which saves the
+ * changes of all sessions together in the background.
+ * Each connection runs on its own virtual thread when the JVM has them (Java 21+),
+ * otherwise on a pooled platform thread.
+ *
+ * The protocol has no encryption, so the server only listens on the loopback interface
+ * unless it is given another address to bind to. When it stops, it closes the client
+ * connections, waits for the sessions to finish their current command, and only then
+ * saves the changes still queued.
+ */
+public class InvestorServer {
+    static final int DEFAULT_PORT = 7070;
+    static final int SAVE_QUEUE_CAPACITY = 4096;
+    static final long SAVE_DELAY_MILLIS = 20;
+    static final int BACKLOG = 50;
+    static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final file_manager the_file_manager;
+    private final TheBank the_bank;
+    private final ExecutorService sessions;
+    private final WriteBehindQueue saver;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private volatile ServerSocket server;
+
+    /**
+     * Creates a server over the given store and bank.
+     *
+     * @param the_file_manager The investor store shared by all sessions.
+     * @param the_bank         The bank shared by all sessions.
+     */
+    public InvestorServer(file_manager the_file_manager, TheBank the_bank) {
+        this.the_file_manager = the_file_manager;
+        this.the_bank = the_bank;
+        this.sessions = new_session_executor();
+        this.saver = new WriteBehindQueue(the_file_manager, SAVE_QUEUE_CAPACITY, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts the server.
+     * Usage: {@code java InvestorServer [port] [bind address]}, e.g.
+     * {@code java InvestorServer 7070 0.0.0.0} to accept connections from other hosts.
+     *
+     * @param args The port to listen on (default 7070) and the address to bind to
+     *             (default: the loopback address, so only this host can connect).
+     * @throws Exception if the port cannot be opened.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        InetAddress bind_address = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+        file_manager the_file_manager = new file_manager();
+        the_file_manager.start_background_compaction(1, TimeUnit.MINUTES);
+        new InvestorServer(the_file_manager, new TheBank()).serve(port, bind_address);
+    }
+
+    /**
+     * Accepts connections on the loopback address until the server is closed.
+     *
+     * @param port The port to listen on; 0 picks a free port.
+     * @throws IOException if the port cannot be opened.
+     */
+    public void serve(int port) throws IOException {
+        serve(port, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Accepts connections until the server is closed, starting a session for each.
+     * On the way out the client connections are closed, the sessions are waited for, and
+     * then the queued changes are saved.
+     *
+     * @param port         The port to listen on; 0 picks a free port.
+     * @param bind_address The local address to listen on; the wildcard address listens on all of them.
+     * @throws IOException if the port cannot be opened.
+     */
+    public void serve(int port, InetAddress bind_address) throws IOException {
+        try (ServerSocket listener = new ServerSocket(port, BACKLOG, bind_address)) {
+            server = listener;
+            System.err.println("Listening on " + listener.getInetAddress().getHostAddress() + " port " + listener.getLocalPort());
+            while (!listener.isClosed()) {
+                Socket client;
+                try {
+                    client = listener.accept();
+                } catch (IOException closed) {
+                    break;
+                }
+                clients.add(client);
+                sessions.execute(() -> handle(client));
+            }
+        } finally {
+            sessions.shutdown();
+            for (Socket client : clients) {
+                try {
+                    client.close();
+                } catch (IOException ignored) {
+                    // the session ends either way
+                }
+            }
+            try {
+                if (!sessions.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    System.err.println("Sessions still running after " + SHUTDOWN_TIMEOUT_SECONDS + " seconds");
+                }
+                saver.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("Some changes could not be saved: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return The port the server listens on, or -1 before it has started.
+     */
+    public int get_port() {
+        ServerSocket s = server;
+        return s == null ? -1 : s.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections and makes {@link #serve} close the open ones. Open
+     * sessions finish their current command.
+     *
+     * @throws IOException if the socket cannot be closed.
+     */
+    public void close() throws IOException {
+        ServerSocket s = server;
+        if (s != null) {
+            s.close();
+        }
+    }
+
+    /**
+     * Runs one client's session until it sends "quit" or disconnects.
+     *
+     * @param client The client's socket.
+     */
+    private void handle(Socket client) {
+        try (Socket socket = client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            CommandSession session = new CommandSession(the_file_manager, the_bank, out, saver);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.trim();
+                if (command.equalsIgnoreCase("quit")) {
+                    break;
+                }
+                if (!command.isEmpty()) {
+                    out.println(session.execute(command));
+                    out.flush();
+                }
+            }
+            session.flush();
+        } catch (Exception e) {
+            System.err.println("Session ended: " + e.getMessage());
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread. Virtual threads
+     * exist from Java 21 on; they are looked up by reflection so the code still builds and
+     * runs on older JVMs, which get a cached pool of platform threads instead.
+     *
+     * @return The executor for sessions.
+     */
+    static ExecutorService new_session_executor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException no_virtual_threads) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "investor-session");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * Which lots of a position a sale takes its quantity from.
+ */
+public enum LotMethod {
+    /** The oldest purchases first. */
+    FIFO,
+    /** The newest purchases first. */
+    LIFO,
+    /** One lot chosen by the seller. */
+    SPECIFIC;
+}
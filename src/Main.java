@@ -1,12 +1,22 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main class to manage user interactions with the portfolio management system.
  * Provides functionality for logging in, signing up, and managing assets, accounts, and zakat.
  */
 public class Main {
+    static final int SAVE_QUEUE_CAPACITY = 64;
+    static final long SAVE_DELAY_MILLIS = 200;
+
     /**
      * Prints the main menu options for the user to choose from.
      */
@@ -25,14 +35,21 @@ public class Main {
     /**
      * Main method for running the portfolio management system.
      * It facilitates user login, asset management, zakat calculations, and more.
+     * With {@code --batch [file]} it runs commands from the file (or standard input)
+     * instead, see {@link CommandSession}.
      *
-     * @param args Command-line arguments (not used).
+     * @param args Command-line arguments: none, or --batch and an optional command file.
      * @throws Exception if an error occurs during file reading/writing.
      */
     public static void main(String[] args) throws Exception{
+        if (args.length > 0 && args[0].equals("--batch")) {
+            int failed = run_batch(args.length > 1 ? args[1] : null);
+            System.exit(failed == 0 ? 0 : 1);
+        }
         Scanner input  = new Scanner(System.in);
         TheBank the_bank = new TheBank();
         file_manager the_file_manager = new file_manager();
+        the_file_manager.start_background_compaction(1, TimeUnit.MINUTES);
         ValidationImpl checker = new ValidationImpl();
 
         Investor current_investor = new Investor();
@@ -57,6 +74,11 @@ public class Main {
             System.out.println("Exiting program...");
             return;
         }
+        for (BankAccount b : current_investor.userPortfolio.getBankAccounts()) {
+            the_bank.addBankAccount(b);
+        }
+        // saves every change in the background shortly after it is made
+        WriteBehindQueue saver = new WriteBehindQueue(the_file_manager, SAVE_QUEUE_CAPACITY, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
         boolean quit = false;
         while(!quit){
             print_options();
@@ -64,34 +86,65 @@ public class Main {
             int input2 = input.nextInt();
             input.nextLine();
 
-            switch (input2) {
-                case 1:
-                    current_investor.userPortfolio.print_portfolio();
-                    break;
-                case 2:
-                    Add_asset(input, current_investor, checker);
-                    break;
-                case 3:
-                    the_bank.bankAccounts.add(current_investor.userPortfolio.addBankAccount(input));
-                    break;
-                case 4:
-                    current_investor.userPortfolio.zakat_due_amount();
-                    break;
-                case 5:
-                    sell_from_asset(input, current_investor);
-                    break;
-                case 6:
-                    edit_asset(input, current_investor);
-                    break;
-                case 7:
-                    remove_asset(input, current_investor);
-                    break;
-                case 8:
-                    System.out.println("Good bye");
-                    the_file_manager.updateInvestor(current_investor);
-                    quit = true;
-                    break;   
+            synchronized (current_investor) {
+                switch (input2) {
+                    case 1:
+                        current_investor.userPortfolio.print_portfolio();
+                        break;
+                    case 2:
+                        Add_asset(input, current_investor, checker);
+                        break;
+                    case 3:
+                        the_bank.addBankAccount(current_investor.userPortfolio.addBankAccount(input));
+                        break;
+                    case 4:
+                        current_investor.userPortfolio.zakat_due_amount();
+                        break;
+                    case 5:
+                        sell_from_asset(input, current_investor);
+                        break;
+                    case 6:
+                        edit_asset(input, current_investor);
+                        break;
+                    case 7:
+                        remove_asset(input, current_investor);
+                        break;
+                    case 8:
+                        System.out.println("Good bye");
+                        quit = true;
+                        break;   
+                }
             }
+            if (input2 == 2 || input2 == 3 || (input2 >= 5 && input2 <= 7)) {
+                saver.mark_dirty(current_investor);
+            }
+        }
+        try {
+            saver.close();
+        } catch (Exception e) {
+            System.out.println("Some changes could not be saved: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a batch of commands without prompting. Result lines go to standard output;
+     * messages printed by the operations themselves are sent to standard error so they
+     * do not mix with the results.
+     *
+     * @param file The command file, or null to read standard input.
+     * @return The number of commands that failed.
+     * @throws Exception if the commands cannot be read or the investors cannot be saved.
+     */
+    static public int run_batch(String file) throws Exception {
+        PrintStream results = System.out;
+        System.setOut(System.err);
+        try (BufferedReader commands = new BufferedReader(file == null
+                ? new InputStreamReader(System.in) : new FileReader(file), 1 << 16)) {
+            PrintWriter out = new PrintWriter(results, false);
+            CommandSession session = new CommandSession(new file_manager(), new TheBank(), out);
+            return session.run(commands);
+        } finally {
+            System.setOut(results);
         }
     }
 
@@ -104,7 +157,6 @@ public class Main {
      * @throws Exception if an error occurs during file reading.
      */
     static public Investor log_in(Scanner input, file_manager fm) throws Exception {
-        fm.get_all_investors();
         String user_name, password;
         
         System.out.println("Enter user name or Email: ");
@@ -113,11 +165,10 @@ public class Main {
         System.out.println("Enter password: ");
         password = input.nextLine();
 
-        for(Investor i : fm.all_investors){
-            if(i.log_in(user_name, password)){
-                System.out.println("Logged in successfully");
-                return i;
-            }
+        Investor i = fm.log_in(user_name, password);
+        if(i != null){
+            System.out.println("Logged in successfully");
+            return i;
         }
         System.out.println("ERROR: User name and password are not compatible");
         return null;
@@ -147,17 +198,29 @@ public class Main {
         }
     
         // user name
+        while(true){
             System.out.println("Enter your user name: ");
             user_name = input.nextLine();
+            if(user_name.isBlank()){
+                System.out.println("Invalid user name");
+            }
+            else if(fm.is_user_name_taken(user_name)){
+                System.out.println("This user name is already taken");
+            }
+            else{break;}
+        }
 
         // email
         while(true){
             System.out.println("Enter your email: ");
            email = input.nextLine();
-            if(checker.checkEmail(email)){
-                break;
+            if(!checker.checkEmail(email)){
+                System.out.println("Invalid email");
+            }
+            else if(fm.is_email_taken(email)){
+                System.out.println("This email is already used by another account");
             }
-            else{System.out.println("Invalid email");}
+            else{break;}
         } 
     
         // password       
@@ -348,6 +411,22 @@ public class Main {
     static public void remove_asset(Scanner input, Investor inv){
         System.out.print("Enter Asset name to remove: ");
         String name = input.nextLine();
-        inv.userPortfolio.removeAsset(name); 
+        List<Asset> lots = inv.userPortfolio.searchForAssets(name);
+        if (lots.size() <= 1) {
+            inv.userPortfolio.removeAsset(name);
+            return;
+        }
+        System.out.println("You hold " + lots.size() + " lots of " + name + ", choose one to remove: ");
+        for (int i = 0; i < lots.size(); i++) {
+            System.out.println((i + 1) + ") " + lots.get(i));
+        }
+        int choice = input.nextInt();
+        input.nextLine();
+        if (choice < 1 || choice > lots.size()) {
+            System.out.println("Invalid choice.");
+            return;
+        }
+        inv.userPortfolio.removeAsset(lots.get(choice - 1));
+        System.out.println("Asset removed successfully.");
     }
 }
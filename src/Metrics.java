@@ -0,0 +1,309 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.ObjectName;
+
+/**
+ * The application's metrics: counters, gauges and latency histograms, by name.
+ *
+ * Recording is cheap enough to stay on all the time. Counters and histogram buckets are
+ * {@link LongAdder}s, so threads recording at once do not contend, and nothing is allocated
+ * per recording. Call sites look their metric up once and keep it in a static field.
+ * A histogram counts latencies in power-of-two buckets of nanoseconds, which is enough for
+ * percentiles within a factor of two.
+ *
+ * The metrics are readable over JMX ({@link MetricsMXBean}). With
+ * {@code -Dmetrics.dumpSeconds=N} they are also printed to stderr every N seconds.
+ */
+public final class Metrics implements MetricsMXBean {
+    static final String OBJECT_NAME = "PersonalInvestment:type=Metrics";
+
+    private static final Metrics INSTANCE = new Metrics();
+    private static ScheduledExecutorService dumper;
+
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<String, LongSupplier>();
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (Exception | LinkageError e) {
+            System.err.println("Metrics not available over JMX: " + e);
+        }
+        int seconds = Integer.getInteger("metrics.dumpSeconds", 0);
+        if (seconds > 0) {
+            startDump(seconds, TimeUnit.SECONDS, System.err);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the counter with the given name, creating it on first use.
+     *
+     * @param name The metric name, e.g. "bank.lookups".
+     * @return The counter.
+     */
+    public static Counter counter(String name) {
+        return INSTANCE.counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /**
+     * Returns the latency histogram with the given name, creating it on first use.
+     *
+     * @param name The metric name, e.g. "store.update".
+     * @return The histogram.
+     */
+    public static Histogram histogram(String name) {
+        return INSTANCE.histograms.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    /**
+     * Registers a gauge, a value read when the metrics are read. A gauge registered again
+     * under the same name replaces the old one.
+     *
+     * @param name  The metric name, e.g. "store.log_bytes".
+     * @param value Reads the current value; called from other threads.
+     */
+    public static void gauge(String name, LongSupplier value) {
+        INSTANCE.gauges.put(name, value);
+    }
+
+    /**
+     * @return The registry, e.g. to read it without JMX.
+     */
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Prints the report periodically on a daemon thread. Replaces an earlier dump.
+     *
+     * @param period Time between two reports.
+     * @param unit   Time unit of the period.
+     * @param out    Where to print.
+     */
+    public static synchronized void startDump(long period, TimeUnit unit, PrintStream out) {
+        stopDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> out.print(INSTANCE.getReport()), period, period, unit);
+    }
+
+    /**
+     * Stops the periodic report, if any.
+     */
+    public static synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        TreeMap<String, Long> values = new TreeMap<String, Long>();
+        for (Map.Entry<String, Counter> e : counters.entrySet()) {
+            values.put(e.getKey(), e.getValue().get());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        TreeMap<String, Long> values = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongSupplier> e : gauges.entrySet()) {
+            try {
+                values.put(e.getKey(), e.getValue().getAsLong());
+            } catch (RuntimeException unreadable) {
+                values.put(e.getKey(), -1L);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, String> getLatencies() {
+        TreeMap<String, String> values = new TreeMap<String, String>();
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            values.put(e.getKey(), e.getValue().toString());
+        }
+        return values;
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("--- metrics ").append(new java.util.Date()).append('\n');
+        for (Map.Entry<String, Long> e : getCounters().entrySet()) {
+            sb.append(String.format("%-36s %d%n", e.getKey(), e.getValue()));
+        }
+        for (Map.Entry<String, Long> e : getGauges().entrySet()) {
+            sb.append(String.format("%-36s %d%n", e.getKey(), e.getValue()));
+        }
+        for (Map.Entry<String, String> e : getLatencies().entrySet()) {
+            sb.append(String.format("%-36s %s%n", e.getKey(), e.getValue()));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (Counter c : counters.values()) {
+            c.reset();
+        }
+        for (Histogram h : histograms.values()) {
+            h.reset();
+        }
+    }
+
+    /**
+     * A count of events.
+     */
+    public static final class Counter {
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * Counts one event.
+         */
+        public void inc() {
+            count.increment();
+        }
+
+        /**
+         * Counts several events.
+         *
+         * @param n The number of events.
+         */
+        public void add(long n) {
+            count.add(n);
+        }
+
+        /**
+         * @return The number of events so far.
+         */
+        public long get() {
+            return count.sum();
+        }
+
+        /**
+         * Sets the count back to zero.
+         */
+        void reset() {
+            count.reset();
+        }
+    }
+
+    /**
+     * A distribution of latencies in power-of-two buckets of nanoseconds.
+     */
+    public static final class Histogram {
+        private static final int BUCKETS = 64;
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Creates an empty histogram.
+         */
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records one latency.
+         *
+         * @param nanos The latency in nanoseconds.
+         */
+        public void record(long nanos) {
+            long n = Math.max(0, nanos);
+            // bucket i holds latencies below 2^i ns
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(n))].increment();
+            total.add(n);
+            max.accumulate(n);
+        }
+
+        /**
+         * Records the time since a start taken with {@link System#nanoTime()}.
+         *
+         * @param startNanos The start.
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * @return The number of recorded latencies.
+         */
+        public long count() {
+            long n = 0;
+            for (LongAdder b : buckets) {
+                n += b.sum();
+            }
+            return n;
+        }
+
+        /**
+         * @param q A quantile between 0 and 1, e.g. 0.99.
+         * @return An upper bound of that quantile in nanoseconds, at most twice the true value;
+         *         0 if nothing was recorded.
+         */
+        public long quantile(double q) {
+            long[] counts = new long[BUCKETS];
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                n += counts[i];
+            }
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(q * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return Math.min(1L << Math.min(i, 62), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        /**
+         * @return Count, mean, median, 99th percentile and maximum, in microseconds.
+         */
+        @Override
+        public String toString() {
+            long n = count();
+            double mean = n == 0 ? 0 : total.sum() / (double) n / 1000;
+            return String.format("count=%d mean=%.1fus p50<=%.1fus p99<=%.1fus max=%.1fus", n, mean,
+                    quantile(0.5) / 1000.0, quantile(0.99) / 1000.0, max.get() / 1000.0);
+        }
+
+        /**
+         * Empties the histogram.
+         */
+        void reset() {
+            for (LongAdder b : buckets) {
+                b.reset();
+            }
+            total.reset();
+            max.reset();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+import java.util.Map;
+
+/**
+ * Management interface of {@link Metrics}, registered on the platform MBean server as
+ * {@value Metrics#OBJECT_NAME}, so the numbers can be read with jconsole or any JMX client.
+ */
+public interface MetricsMXBean {
+    /**
+     * @return Every counter by name.
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return The current value of every gauge by name.
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * @return A summary of every latency histogram by name: count, mean, median, 99th
+     *         percentile and maximum in microseconds.
+     */
+    Map<String, String> getLatencies();
+
+    /**
+     * @return All metrics as text, one per line.
+     */
+    String getReport();
+
+    /**
+     * Sets every counter and histogram back to zero. Gauges are not affected.
+     */
+    void reset();
+}
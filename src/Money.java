@@ -0,0 +1,243 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point amounts as scaled {@code long}s, so valuation is exact and sums do not drift.
+ *
+ * Every kind of amount has its own scale, the number of units per whole:
+ * quantities are held in millionths ({@link #QUANTITY_SCALE}), prices and values in
+ * ten-thousandths ({@link #PRICE_SCALE}, {@link #VALUE_SCALE}). A value is quantity times
+ * price, rescaled and rounded half away from zero; sums of values are plain long
+ * additions, so they do not depend on the order of the terms.
+ *
+ * The arithmetic helpers only use primitives and never allocate. Results that do not fit
+ * in a long throw {@link ArithmeticException}. Amounts typed as text are read with
+ * {@link #parse}, straight from their decimal digits, so "12345.67" is exactly 12345.67.
+ */
+public final class Money {
+    /** Units per whole for quantities: 6 decimal places. */
+    public static final long QUANTITY_SCALE = 1_000_000L;
+    /** Units per whole for prices: 4 decimal places. */
+    public static final long PRICE_SCALE = 10_000L;
+    /** Units per whole for values (quantity times price): 4 decimal places. */
+    public static final long VALUE_SCALE = PRICE_SCALE;
+
+    private Money() {
+    }
+
+    /**
+     * Reads a decimal amount into units, without going through a binary fraction.
+     *
+     * @param text  The amount as decimal text, e.g. "12345.67" or "1e3".
+     * @param scale The units per whole of the amount.
+     * @return The amount in units, rounded half away from zero.
+     * @throws IllegalArgumentException if the text is not a number or the amount is out of range.
+     */
+    public static long parse(String text, long scale) {
+        BigDecimal amount;
+        try {
+            amount = new BigDecimal(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number: " + text);
+        }
+        try {
+            return amount.multiply(BigDecimal.valueOf(scale)).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("amount out of range: " + text);
+        }
+    }
+
+    /**
+     * Converts a quantity held as a float, e.g. by older data, through its shortest decimal
+     * form, so 12345.67f becomes 12345.67 and not 12345.669922.
+     *
+     * @param quantity A quantity.
+     * @return The quantity in units, rounded to the nearest unit.
+     * @throws IllegalArgumentException if the quantity is not finite or out of range.
+     */
+    public static long quantityOf(float quantity) {
+        return fromFloat(quantity, QUANTITY_SCALE);
+    }
+
+    /**
+     * Converts a price held as a float through its shortest decimal form, like
+     * {@link #quantityOf(float)}.
+     *
+     * @param price A price.
+     * @return The price in units, rounded to the nearest unit.
+     * @throws IllegalArgumentException if the price is not finite or out of range.
+     */
+    public static long priceOf(float price) {
+        return fromFloat(price, PRICE_SCALE);
+    }
+
+    /**
+     * @param quantity A quantity.
+     * @return The quantity in units, rounded to the nearest unit.
+     */
+    public static long quantityOf(double quantity) {
+        return toUnits(quantity, QUANTITY_SCALE);
+    }
+
+    /**
+     * @param price A price.
+     * @return The price in units, rounded to the nearest unit.
+     */
+    public static long priceOf(double price) {
+        return toUnits(price, PRICE_SCALE);
+    }
+
+    /**
+     * @param value A value, e.g. a sum of money.
+     * @return The value in units, rounded to the nearest unit.
+     */
+    public static long amountOf(double value) {
+        return toUnits(value, VALUE_SCALE);
+    }
+
+    /**
+     * @param units A quantity in units.
+     * @return The quantity.
+     */
+    public static double quantity(long units) {
+        return (double) units / QUANTITY_SCALE;
+    }
+
+    /**
+     * @param units A price in units.
+     * @return The price.
+     */
+    public static double price(long units) {
+        return (double) units / PRICE_SCALE;
+    }
+
+    /**
+     * @param units A value in units.
+     * @return The value.
+     */
+    public static double value(long units) {
+        return (double) units / VALUE_SCALE;
+    }
+
+    /**
+     * Multiplies a quantity by a price.
+     *
+     * @param quantityUnits The quantity in units.
+     * @param priceUnits    The price in units.
+     * @return The value in units, rounded half away from zero.
+     */
+    public static long valueOf(long quantityUnits, long priceUnits) {
+        return mulDiv(quantityUnits, priceUnits, QUANTITY_SCALE * PRICE_SCALE / VALUE_SCALE);
+    }
+
+    /**
+     * Takes a fraction of a value, e.g. 25/1000 for 2.5%.
+     *
+     * @param valueUnits  The value in units.
+     * @param numerator   Numerator of the fraction.
+     * @param denominator Denominator of the fraction.
+     * @return The share in units, rounded half away from zero.
+     */
+    public static long share(long valueUnits, long numerator, long denominator) {
+        return mulDiv(valueUnits, numerator, denominator);
+    }
+
+    /**
+     * Computes {@code a * b / d}, rounded half away from zero, without losing the high bits
+     * of the product.
+     *
+     * @param a A factor.
+     * @param b A factor.
+     * @param d The divisor; positive and below 2^31.
+     * @return The quotient.
+     * @throws ArithmeticException if the quotient does not fit in a long.
+     */
+    public static long mulDiv(long a, long b, long d) {
+        if (d <= 0 || d > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("divisor out of range: " + d);
+        }
+        long lo = a * b;
+        long hi = Math.multiplyHigh(a, b);
+        if ((hi == 0 && lo >= 0) || (hi == -1 && lo < 0)) {
+            // the product fits in a long
+            long q = lo / d, r = lo % d;
+            if (Math.abs(r) * 2 >= d) {
+                q += lo < 0 ? -1 : 1;
+            }
+            return q;
+        }
+        boolean negative = hi < 0;
+        if (negative) {
+            // negate the 128-bit product
+            lo = -lo;
+            hi = lo == 0 ? -hi : ~hi;
+        }
+        // unsigned 128 by 31 bit long division, 32 bits at a time
+        long qHi = Long.divideUnsigned(hi, d);
+        long r = Long.remainderUnsigned(hi, d);
+        long part = (r << 32) | (lo >>> 32);
+        long q1 = part / d;
+        r = part % d;
+        part = (r << 32) | (lo & 0xFFFFFFFFL);
+        long q0 = part / d;
+        r = part % d;
+        if (qHi != 0 || (q1 >>> 31) != 0) {
+            throw new ArithmeticException("amount out of range");
+        }
+        long q = (q1 << 32) + q0;
+        if (r * 2 >= d) {
+            q++;
+        }
+        if (q < 0) {
+            throw new ArithmeticException("amount out of range");
+        }
+        return negative ? -q : q;
+    }
+
+    /**
+     * @param units An amount in units.
+     * @param scale The units per whole of the amount.
+     * @return The amount as a decimal string with all its places, e.g. "12.3400".
+     */
+    public static String format(long units, long scale) {
+        int places = Long.toString(scale).length() - 1;
+        long whole = units / scale, fraction = Math.abs(units % scale);
+        String digits = Long.toString(fraction);
+        StringBuilder sb = new StringBuilder(24);
+        if (units < 0 && whole == 0) {
+            sb.append('-');
+        }
+        sb.append(whole).append('.');
+        for (int i = digits.length(); i < places; i++) {
+            sb.append('0');
+        }
+        return sb.append(digits).toString();
+    }
+
+    /**
+     * @param amount An amount.
+     * @param scale  The units per whole.
+     * @return The amount in units, rounded half away from zero.
+     * @throws IllegalArgumentException if the amount is not finite or out of range.
+     */
+    private static long fromFloat(float amount, long scale) {
+        if (!Float.isFinite(amount)) {
+            throw new IllegalArgumentException("amount out of range: " + amount);
+        }
+        return parse(Float.toString(amount), scale);
+    }
+
+    /**
+     * @param amount An amount.
+     * @param scale  The units per whole.
+     * @return The amount in units, rounded to the nearest unit.
+     * @throws IllegalArgumentException if the amount is not finite or out of range.
+     */
+    private static long toUnits(double amount, long scale) {
+        double scaled = amount * scale;
+        if (!(Math.abs(scaled) < 9.0e18)) {
+            throw new IllegalArgumentException("amount out of range: " + amount);
+        }
+        return Math.round(scaled);
+    }
+}
@@ -0,0 +1,37 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one call into the investor store: how long it took, how many
+ * investor records it handled, how many bytes it read and wrote, and how much of the time
+ * went to (de)serializing investors.
+ */
+@Name("personalinvestment.Persistence")
+@Label("Investor Store Call")
+@Category({"Personal Investment", "Persistence"})
+@Description("A read or write of investor records")
+final class PersistenceEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    @Description("load_all, read, add, update or compact")
+    String operation;
+
+    @Label("Records")
+    int records;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+
+    @Label("Serialization Time")
+    @Description("Time spent turning investors into bytes or back")
+    @Timespan(Timespan.NANOSECONDS)
+    long serializationTime;
+}
@@ -1,18 +1,76 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.Scanner;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Represents a financial portfolio for an investor, including owned assets and linked bank accounts.
+ * The total value and the halal value are kept as running totals, updated whenever an asset
+ * is added, removed or changed, so reading them does not scan the assets. The totals are
+ * exact fixed-point sums in {@link Money} value units, so they never drift.
+ * A column-oriented copy of the holdings ({@link HoldingStore}) serves full recomputes
+ * and filtered sums without touching the asset objects.
+ * Assets are also indexed by case-insensitive name; several lots may share a name.
+ * An asset's place in the list, which users pick assets from by number, is its slot in the
+ * holding store. Removing an asset leaves an empty slot in both, in O(1), so the others keep
+ * their order; the gaps are closed once they outnumber the assets, before a lookup by
+ * number and before the portfolio is written.
+ *
+ * The market value follows the latest market price of each asset (see {@link PriceEngine})
+ * and is kept as a running total too. Changes to the assets and their market prices are
+ * made while holding this portfolio's monitor, so a price tick and an edit cannot interleave.
+ * Listeners are told when a holding is added, removed or renamed.
+ * Changes and valuation passes are reported to Flight Recorder as
+ * {@link PortfolioMutationEvent}s and {@link ValuationEvent}s.
+ *
+ * Sales take their quantity from the lots of a position in FIFO, LIFO or specific-lot
+ * order and record the realized gain ({@link TaxLots}); the unrealized gain is the market
+ * value less the purchase value of what is still held.
+ *
+ * Every change is also journaled for the investor's ledger ({@link PortfolioLedger}), which
+ * takes the journal when the investor is saved. Each lot has an id, unique within the
+ * portfolio, so the ledger can follow it through its changes.
  */
 public class Portfolio implements Serializable {
+    private static final long serialVersionUID = -5069158400237589905L;
+
+    /**
+     * When set (-Dportfolio.checkTotals=true), every change compares the running totals
+     * with a full recompute and throws if they disagree. Meant for tests.
+     */
+    static boolean CHECK_TOTALS = Boolean.getBoolean("portfolio.checkTotals");
+    private static final Metrics.Histogram RECOMPUTE_TIME = Metrics.histogram("portfolio.recompute");
+    private static final Metrics.Counter ZAKAT_READS = Metrics.counter("portfolio.zakat");
+
     private ArrayList<Asset> assets;
     private ArrayList<BankAccount> bankAccounts;
+    /** Only kept for the serialized form; the running totals are in units. */
     private double totalValue;
+    private transient long totalUnits;
+    private transient long halalUnits;
+    private transient HoldingStore holdings;
+    private transient HashMap<String, LinkedHashMap<Long, Asset>> assetsByName;
+    private transient String nameBeforeChange;
+    private transient long quantityBeforeChange;
+    private transient long marketUnits;
+    private transient CopyOnWriteArrayList<HoldingListener> listeners;
+    private transient int modCount;
+    private transient PortfolioLedger.Journal journal;
     private ValidationImpl validator;
+    private TaxLots taxLots;
+    private long lastLotId;
 
     /**
      * Constructs a new Portfolio with empty asset and bank account lists.
@@ -20,8 +78,60 @@ public class Portfolio implements Serializable {
     public Portfolio() {
         this.assets = new ArrayList<Asset>();
         this.bankAccounts = new ArrayList<BankAccount>();
-        this.totalValue = 0;
         this.validator = new ValidationImpl();
+        this.holdings = new HoldingStore();
+        this.assetsByName = new HashMap<String, LinkedHashMap<Long, Asset>>();
+        this.listeners = new CopyOnWriteArrayList<HoldingListener>();
+        this.taxLots = new TaxLots();
+        taxLots.attach(this);
+    }
+
+    /**
+     * Receives the changes to a portfolio's holdings. Called while holding the portfolio's monitor.
+     */
+    interface HoldingListener {
+        /**
+         * @param a The asset added to the portfolio.
+         */
+        void assetAdded(Asset a);
+
+        /**
+         * @param a The asset removed from the portfolio.
+         */
+        void assetRemoved(Asset a);
+
+        /**
+         * @param a       The asset, already carrying its new name.
+         * @param oldName The name it had before.
+         */
+        void assetRenamed(Asset a, String oldName);
+
+        /**
+         * Called when an asset's quantity changed without a rename.
+         *
+         * @param a              The asset, already carrying its new quantity.
+         * @param quantityBefore The quantity it had before, in {@link Money} quantity units.
+         */
+        default void assetQuantityChanged(Asset a, long quantityBefore) {
+        }
+    }
+
+    /**
+     * Registers a listener for changes to the holdings.
+     *
+     * @param listener The listener.
+     */
+    void addHoldingListener(HoldingListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener The listener.
+     */
+    void removeHoldingListener(HoldingListener listener) {
+        listeners.remove(listener);
     }
 
     /**
@@ -37,7 +147,7 @@ public class Portfolio implements Serializable {
             System.out.print("Enter card number (16 digits): ");
             cardNumber = scanner.nextLine().trim().replaceAll("\\s+", ""); // Remove spaces
 
-            if (cardNumber.length() == 16 && validator.checkIfNumeric(cardNumber)) {
+            if (validator.checkCardNumber(cardNumber)) {
                 break;
             } else {
                 System.out.println("Invalid card number. Must be exactly 16 digits (numbers only).");
@@ -100,109 +210,675 @@ public class Portfolio implements Serializable {
         return newAccount;
     }
 
+    /**
+     * Links an already validated bank account to this portfolio, without prompting.
+     *
+     * @param account The account to link.
+     */
+    public void linkBankAccount(BankAccount account) {
+        bankAccounts.add(account);
+    }
+
+    /**
+     * Returns the bank accounts linked to this portfolio.
+     *
+     * @return The linked accounts (read-only).
+     */
+    public List<BankAccount> getBankAccounts() {
+        return Collections.unmodifiableList(bankAccounts);
+    }
+
     /**
      * Returns the asset at the specified index.
+     * If assets were removed since the last lookup, the gaps they left are closed first.
      *
      * @param index Index of the asset in the list.
      * @return Asset object at the specified index.
      */
-    public Asset get_asset(int index){
+    public synchronized Asset get_asset(int index){
+        if (holdings.removed() != 0) {
+            compactAssets();
+        }
         return assets.get(index);
     }
 
+    /**
+     * Returns the number of assets (lots) in the portfolio.
+     *
+     * @return The number of assets.
+     */
+    public int getAssetCount() {
+        return holdings.size();
+    }
+
     /**
      * Adds a new asset to the portfolio and updates the total value.
      *
      * @param newAsset The Asset object to add.
+     * @throws IllegalArgumentException if the asset's value would not fit in the totals; the
+     *                                  portfolio is then unchanged.
      */
-    public void addAsset(Asset newAsset) {
+    public synchronized void addAsset(Asset newAsset) {
+        PortfolioMutationEvent event = new PortfolioMutationEvent();
+        event.begin();
+        checkInRange(newAsset.getQuantityUnits(), newAsset.getPurchasePriceUnits(), newAsset.getMarketPriceUnits(), null);
+        PortfolioLedger.Journal j = journal();
+        if (newAsset.getLotId() == 0) {
+            newAsset.setLotId(++lastLotId);
+        } else {
+            lastLotId = Math.max(lastLotId, newAsset.getLotId());
+        }
         assets.add(newAsset);
-        calculateTotalValue();
+        newAsset.setOwner(this);
+        holdings.add(newAsset);
+        indexName(newAsset);
+        addToTotals(newAsset, 1);
+        modCount++;
+        checkTotals();
+        for (HoldingListener l : listeners) {
+            l.assetAdded(newAsset);
+        }
+        j.lot(PortfolioLedger.ADD, newAsset);
+        commit(event, "add", newAsset);
     }
 
     /**
      * Removes an asset by name from the portfolio.
+     * If several lots share the name, the one added first is removed.
      *
      * @param name Name of the asset to remove.
      */
     public void removeAsset(String name) {
         Asset toRemove = searchForAsset(name);
         if (toRemove != null) {
-            assets.remove(toRemove);
+            removeAsset(toRemove);
             System.out.println("Asset removed successfully.");
-            calculateTotalValue();
         } else {
             System.out.println("Asset not found.");
         }
     }
 
     /**
-     * Searches for an asset in the portfolio by name.
+     * Removes one specific asset (lot) from the portfolio.
+     * Its slot is left empty, so the assets after it keep their order and move up one
+     * number; the gaps are closed once they outnumber the assets.
+     *
+     * @param toRemove The asset to remove.
+     * @return True if the asset was in this portfolio.
+     */
+    public synchronized boolean removeAsset(Asset toRemove) {
+        PortfolioMutationEvent event = new PortfolioMutationEvent();
+        event.begin();
+        int slot = toRemove.getHoldingSlot();
+        if (toRemove.getOwner() != this || slot < 0 || slot >= assets.size() || assets.get(slot) != toRemove) {
+            return false;
+        }
+        PortfolioLedger.Journal j = journal();
+        assets.set(slot, null);
+        holdings.remove(toRemove);
+        unindexName(toRemove);
+        addToTotals(toRemove, -1);
+        toRemove.setOwner(null);
+        modCount++;
+        checkTotals();
+        for (HoldingListener l : listeners) {
+            l.assetRemoved(toRemove);
+        }
+        j.removed(toRemove);
+        if (holdings.removed() > holdings.size()) {
+            compactAssets();
+        }
+        commit(event, "remove", toRemove);
+        return true;
+    }
+
+    /**
+     * Searches for an asset in the portfolio by name, ignoring case.
+     * If several lots share the name, the one added first is returned.
      *
      * @param name Name of the asset.
      * @return The Asset object if found, or null otherwise.
      */
     public Asset searchForAsset(String name) {
-        for (Asset a : assets) {
-            if (a.getName().equalsIgnoreCase(name)) {
-                return a;
-            }
-        }
-        return null;
+        LinkedHashMap<Long, Asset> lots = assetsByName.get(nameKey(name));
+        return lots == null ? null : lots.values().iterator().next();
+    }
+
+    /**
+     * Returns every asset (lot) with the given name, ignoring case, in the order they were added.
+     *
+     * @param name Name of the asset.
+     * @return The matching assets; empty if there are none.
+     */
+    public List<Asset> searchForAssets(String name) {
+        LinkedHashMap<Long, Asset> lots = assetsByName.get(nameKey(name));
+        return lots == null ? Collections.<Asset>emptyList() : Collections.unmodifiableList(new ArrayList<Asset>(lots.values()));
     }
 
     /**
-     * Sells a percentage of the asset at the specified index.
+     * Sells a percentage of the asset at the specified index, at its market price.
+     * This is a specific-lot sale; its realized gain is recorded.
      *
      * @param percentage Percentage of the asset to sell.
      * @param index Index of the asset in the list (0-based).
+     * @return True if the sale was made, false if the percentage is over 100 or negative.
      */  
-    public void sellFromAsset(double percentage, int index) {
+    public synchronized boolean sellFromAsset(double percentage, int index) {
         if (percentage > 100) {
             System.out.println("Can't sell over 100% of asset");
-            return;
+            return false;
+        }
+        if (percentage < 0) {
+            System.out.println("Can't sell a negative percentage of asset");
+            return false;
         }
 
-        Asset asset = assets.get(index);
-        float currentQuantity = asset.getQuantity();
-        float amountToSell = (float) (currentQuantity * (percentage / 100.0));
-        float remaining = currentQuantity - amountToSell;
+        PortfolioMutationEvent event = new PortfolioMutationEvent();
+        event.begin();
+        Asset asset = get_asset(index);
+        long amountToSell = Math.round(asset.getQuantityUnits() * (percentage / 100.0));
+        taxLots.sellLot(asset, amountToSell, 0);
+        commit(event, "sell", asset);
+        System.out.println("Successfully sold " + percentage + "% of " + asset.getName());
+        return true;
+    }
 
-        asset.updateAsset(asset.getName(), remaining,
-                        asset.getPurchasePrice(),
-                        asset.getAssetType(),
-                        asset.IsItHalal());
+    /**
+     * Sells a quantity of a position, the lots sharing a name, taking it from the lots in
+     * FIFO or LIFO order. The cost is only that of the lots taken from.
+     *
+     * @param name          The asset name, ignoring case.
+     * @param quantityUnits The quantity to sell, in {@link Money} quantity units.
+     * @param priceUnits    The sale price in price units, or 0 to sell at the market price.
+     * @param method        FIFO or LIFO; null for the portfolio's lot method.
+     * @return The sale, with its realized gain and the lots taken from.
+     * @throws IllegalArgumentException if the position holds less than the quantity.
+     */
+    public synchronized TaxLots.Sale sell(String name, long quantityUnits, long priceUnits, LotMethod method) {
+        PortfolioMutationEvent event = new PortfolioMutationEvent();
+        event.begin();
+        TaxLots.Sale sale = taxLots.sell(name, quantityUnits, priceUnits, method);
+        commit(event, "sell", name);
+        return sale;
+    }
 
-        if (remaining <= 0) {
-            asset.switchState(state.sold);
+    /**
+     * Sells a quantity from one chosen lot (specific-lot identification).
+     *
+     * @param lot           A lot of this portfolio.
+     * @param quantityUnits The quantity to sell, in {@link Money} quantity units.
+     * @param priceUnits    The sale price in price units, or 0 to sell at the market price.
+     * @return The sale, with its realized gain.
+     * @throws IllegalArgumentException if the lot is not in this portfolio or holds less.
+     */
+    public synchronized TaxLots.Sale sellLot(Asset lot, long quantityUnits, long priceUnits) {
+        if (lot.getOwner() != this) {
+            throw new IllegalArgumentException("not a lot of this portfolio");
         }
-        System.out.println("Successfully sold " + percentage + "% of " + asset.getName());
+        PortfolioMutationEvent event = new PortfolioMutationEvent();
+        event.begin();
+        TaxLots.Sale sale = taxLots.sellLot(lot, quantityUnits, priceUnits);
+        commit(event, "sell", lot);
+        return sale;
+    }
+
+    /**
+     * @param name An asset name, ignoring case.
+     * @return The quantity held of it over all its lots, in {@link Money} quantity units.
+     */
+    public synchronized long heldQuantityUnits(String name) {
+        return taxLots.openQuantity(name);
+    }
+
+    /**
+     * @return The lot method of sales that do not name one.
+     */
+    public synchronized LotMethod getLotMethod() {
+        return taxLots.getMethod();
+    }
+
+    /**
+     * @param method FIFO or LIFO, for sales that do not name a method.
+     */
+    public synchronized void setLotMethod(LotMethod method) {
+        taxLots.setMethod(method);
+    }
+
+    /**
+     * @return The realized gain of all sales, in {@link Money} value units; negative for a loss.
+     */
+    public synchronized long getRealizedGainUnits() {
+        return taxLots.getRealizedUnits();
+    }
+
+    /**
+     * @return The realized gain of all sales; negative for a loss.
+     */
+    public double getRealizedGain() {
+        return Money.value(getRealizedGainUnits());
+    }
+
+    /**
+     * @return The gain on what is still held, market value less purchase value, in
+     *         {@link Money} value units.
+     */
+    public synchronized long getUnrealizedGainUnits() {
+        return marketUnits - totalUnits;
+    }
+
+    /**
+     * @return The gain on what is still held, market value less purchase value.
+     */
+    public double getUnrealizedGain() {
+        return Money.value(getUnrealizedGainUnits());
     }
 
     /**
-     * Calculates and updates the total value of all assets.
+     * Recalculates the total value of all assets from scratch and resets the running
+     * totals to the result. Normal reads use {@link #getTotalValue()} instead.
      *
      * @return The total value of assets.
      */
-    public double calculateTotalValue() {
-        this.totalValue = 0;
+    public synchronized double calculateTotalValue() {
+        long start = System.nanoTime();
+        ValuationEvent event = new ValuationEvent();
+        event.begin();
+        this.totalUnits = holdings.totalValue();
+        this.halalUnits = holdings.valueWhereHalal(true);
+        long market = 0;
+        for (Asset a : assets) {
+            if (a != null) {
+                market += a.getMarketValueUnits();
+            }
+        }
+        this.marketUnits = market;
+        RECOMPUTE_TIME.recordSince(start);
+        commit(event, "recompute");
+        return Money.value(this.totalUnits);
+    }
+
+    /**
+     * Sets an asset's market price and moves the market value by the difference.
+     * Only the asset's value is touched, not the rest of the portfolio.
+     *
+     * @param a          An asset of this portfolio.
+     * @param priceUnits The new market price in units, or 0 to fall back to the purchase price.
+     */
+    synchronized void applyMarketPrice(Asset a, long priceUnits) {
+        if (a.getOwner() != this) {
+            return;
+        }
+        long before = a.getMarketValueUnits();
+        a.setMarketPrice(priceUnits);
+        this.marketUnits += a.getMarketValueUnits() - before;
+    }
+
+    /**
+     * Sums the value of the assets in a given state, e.g. only active ones.
+     *
+     * @param s The asset state.
+     * @return The value of the assets in that state.
+     */
+    public double valueInState(state s) {
+        return Money.value(holdings.valueInState(s));
+    }
+
+    /**
+     * Compares the running totals with a full recompute.
+     *
+     * @return True if both agree exactly.
+     */
+    public synchronized boolean verifyTotals() {
+        ValuationEvent event = new ValuationEvent();
+        event.begin();
+        long total = 0, halal = 0, market = 0;
         for (Asset a : assets) {
-            this.totalValue += a.getPurchasePrice() * a.getQuantity();
+            if (a == null) {
+                continue;
+            }
+            long value = a.getValueUnits();
+            total += value;
+            if (a.IsItHalal()) {
+                halal += value;
+            }
+            market += a.getMarketValueUnits();
         }
-        return this.totalValue;
+        commit(event, "verify");
+        return total == totalUnits && halal == halalUnits && market == marketUnits;
     }
 
     /**
      * Calculates and prints the zakat due for halal assets (2.5% of their value).
      */
     public void zakat_due_amount(){
-        float zakat_amount = 0;
-        for(Asset a : assets){
-            if(a.IsItHalal()){
-                zakat_amount += a.getQuantity() * a.getPurchasePrice() * 0.025;
+        double zakat_amount = zakatDue();
+        System.out.println("Your zakat due amount: " + zakat_amount + "$");
+    }
+
+    /**
+     * Returns the zakat due for halal assets (2.5% of their value), without printing it.
+     *
+     * @return The zakat due.
+     */
+    public double zakatDue() {
+        return Money.value(zakatDueUnits());
+    }
+
+    /**
+     * Returns the zakat due for halal assets (2.5% of their value) exactly.
+     *
+     * @return The zakat due in {@link Money} value units.
+     */
+    public synchronized long zakatDueUnits() {
+        ZAKAT_READS.inc();
+        return Money.share(halalUnits, 25, 1000);
+    }
+
+    /**
+     * Counts the changes to the assets: it moves on every add, remove, edit and state change,
+     * so a result derived from the assets can tell whether it is still current.
+     * Read it while holding this portfolio's monitor.
+     *
+     * @return The change count.
+     */
+    int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Takes an asset's value out of the running totals before it changes.
+     * Called by {@link Asset#updateAsset}.
+     *
+     * @param a The asset about to change.
+     */
+    void beforeAssetChange(Asset a) {
+        journal();
+        nameBeforeChange = nameKey(a.getName());
+        quantityBeforeChange = a.getQuantityUnits();
+        addToTotals(a, -1);
+    }
+
+    /**
+     * Puts an asset's value back into the running totals after it changed.
+     * Called by {@link Asset#updateAsset}.
+     *
+     * @param a The asset that changed.
+     */
+    void afterAssetChange(Asset a) {
+        holdings.update(a);
+        String oldName = nameBeforeChange;
+        nameBeforeChange = null;
+        addToTotals(a, 1);
+        modCount++;
+        if (!nameKey(a.getName()).equals(oldName)) {
+            // renamed: move it to the new name; otherwise it keeps its place among its lots
+            unindexName(a, oldName);
+            indexName(a);
+            for (HoldingListener l : listeners) {
+                l.assetRenamed(a, oldName);
+            }
+        } else if (a.getQuantityUnits() != quantityBeforeChange) {
+            for (HoldingListener l : listeners) {
+                l.assetQuantityChanged(a, quantityBeforeChange);
             }
         }
-        System.out.println("Your zakat due amount: " + zakat_amount + "$");
+        journal.lot(PortfolioLedger.EDIT, a);
+        checkTotals();
+    }
+
+    /**
+     * Starts the journal before an asset's state changes, so it holds the state before.
+     * Called by {@link Asset#switchState}.
+     *
+     * @param a The asset about to change.
+     */
+    void beforeStateChange(Asset a) {
+        journal();
+    }
+
+    /**
+     * Copies an asset's new state into the holding columns.
+     * Called by {@link Asset#switchState}.
+     *
+     * @param a The asset whose state changed.
+     */
+    void assetStateChanged(Asset a) {
+        holdings.update(a);
+        modCount++;
+        journal.lot(PortfolioLedger.STATE, a);
+    }
+
+    /**
+     * Journals a sale. Called by {@link TaxLots} before the realized gain is added.
+     *
+     * @param sale The sale.
+     */
+    void journalSale(TaxLots.Sale sale) {
+        journal().sale(sale);
+    }
+
+    /**
+     * Hands the changes journaled since the last call to the ledger.
+     *
+     * @return The journal, or null if nothing changed.
+     */
+    synchronized PortfolioLedger.Journal takeJournal() {
+        PortfolioLedger.Journal j = journal;
+        journal = null;
+        return j;
+    }
+
+    /**
+     * Puts back a journal the ledger could not write, ahead of any changes made since.
+     *
+     * @param j The journal taken by {@link #takeJournal()}.
+     */
+    synchronized void restoreJournal(PortfolioLedger.Journal j) {
+        if (journal != null) {
+            j.append(journal);
+        }
+        journal = j;
+    }
+
+    /**
+     * Returns the journal, starting one with the current state as its baseline if there
+     * is none. Called before a change.
+     *
+     * @return The journal.
+     */
+    private PortfolioLedger.Journal journal() {
+        if (journal == null) {
+            journal = new PortfolioLedger.Journal(this);
+        }
+        return journal;
+    }
+
+    /**
+     * Closes the gaps left by removed assets, in the list and the holding columns alike,
+     * so every asset's place in the list is its slot again.
+     */
+    private void compactAssets() {
+        holdings.compact();
+        assets.removeIf(Objects::isNull);
+    }
+
+    /**
+     * Adds an asset to the name index. The lots of a name are keyed by lot id, in the
+     * order they were added, so one can be removed without a search.
+     *
+     * @param a The asset.
+     */
+    private void indexName(Asset a) {
+        assetsByName.computeIfAbsent(nameKey(a.getName()), k -> new LinkedHashMap<Long, Asset>(2)).put(a.getLotId(), a);
+    }
+
+    /**
+     * Removes an asset from the name index.
+     *
+     * @param a The asset.
+     */
+    private void unindexName(Asset a) {
+        unindexName(a, nameKey(a.getName()));
+    }
+
+    /**
+     * Removes an asset from the name index under the given key.
+     *
+     * @param a   The asset.
+     * @param key The index key the asset was added under.
+     */
+    private void unindexName(Asset a, String key) {
+        LinkedHashMap<Long, Asset> lots = assetsByName.get(key);
+        if (lots != null) {
+            lots.remove(a.getLotId(), a);
+            if (lots.isEmpty()) {
+                assetsByName.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @param name An asset name.
+     * @return The name as used in the name index.
+     */
+    private static String nameKey(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Checks that an asset of this quantity and price fits in the running totals, so a
+     * change that would overflow them is refused before anything is changed.
+     *
+     * @param quantityUnits    The asset's quantity in units.
+     * @param priceUnits       The asset's purchase price in units.
+     * @param marketPriceUnits The asset's market price in units.
+     * @param replaced         The asset whose value this replaces, or null for a new asset.
+     * @throws IllegalArgumentException if the asset's value or a total does not fit in a long.
+     */
+    void checkInRange(long quantityUnits, long priceUnits, long marketPriceUnits, Asset replaced) {
+        try {
+            long total = totalUnits, market = marketUnits;
+            if (replaced != null) {
+                total -= replaced.getValueUnits();
+                market -= replaced.getMarketValueUnits();
+            }
+            Math.addExact(total, Money.valueOf(quantityUnits, priceUnits));
+            Math.addExact(market, Money.valueOf(quantityUnits, marketPriceUnits));
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("amount out of range");
+        }
+    }
+
+    /**
+     * Adds or subtracts one asset's value to or from the running totals.
+     *
+     * @param a    The asset.
+     * @param sign 1 to add, -1 to subtract.
+     */
+    private void addToTotals(Asset a, int sign) {
+        long value = sign * a.getValueUnits();
+        this.totalUnits += value;
+        if (a.IsItHalal()) {
+            this.halalUnits += value;
+        }
+        this.marketUnits += sign * a.getMarketValueUnits();
+    }
+
+    /**
+     * Finishes a mutation event, if Flight Recorder wants it.
+     *
+     * @param event     The event, begun when the change started.
+     * @param operation What was done.
+     * @param a         The asset it was done to.
+     */
+    void commit(PortfolioMutationEvent event, String operation, Asset a) {
+        commit(event, operation, a.getName());
+    }
+
+    /**
+     * Finishes a mutation event, if Flight Recorder wants it.
+     *
+     * @param event     The event, begun when the change started.
+     * @param operation What was done.
+     * @param assetName The name of the asset it was done to.
+     */
+    private void commit(PortfolioMutationEvent event, String operation, String assetName) {
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.asset = assetName;
+            event.assets = holdings.size();
+            event.totalValue = Money.value(totalUnits);
+            event.commit();
+        }
+    }
+
+    /**
+     * Finishes a valuation event for this portfolio, if Flight Recorder wants it.
+     *
+     * @param event The event, begun when the pass started.
+     * @param kind  The kind of pass.
+     */
+    private void commit(ValuationEvent event, String kind) {
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.portfolios = 1;
+            event.assets = holdings.size();
+            event.value = Money.value(totalUnits);
+            event.commit();
+        }
+    }
+
+    /**
+     * Throws if the consistency check is switched on and the running totals have drifted.
+     */
+    private void checkTotals() {
+        if (CHECK_TOTALS && !verifyTotals()) {
+            throw new IllegalStateException("Portfolio running totals out of sync: total=" + totalUnits
+                    + ", halal=" + halalUnits + ", market=" + marketUnits);
+        }
+    }
+
+    /**
+     * Writes the portfolio, with the total value as a double for older versions.
+     *
+     * @param out The stream to write to.
+     * @throws IOException if the stream cannot be written.
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        if (holdings.removed() != 0) {
+            compactAssets();
+        }
+        totalValue = Money.value(totalUnits);
+        out.defaultWriteObject();
+    }
+
+    /**
+     * Restores the links from assets to this portfolio, the holding columns, the name
+     * index and the running totals, which are not part of the serialized form. Data from
+     * before tax lots starts with no realized gain, and lots without an id are numbered in order.
+     *
+     * @param in The stream to read from.
+     * @throws IOException            if the stream cannot be read.
+     * @throws ClassNotFoundException if a class of the stream is unknown.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        holdings = new HoldingStore(assets.size());
+        assetsByName = new HashMap<String, LinkedHashMap<Long, Asset>>();
+        listeners = new CopyOnWriteArrayList<HoldingListener>();
+        for (Asset a : assets) {
+            if (a.getLotId() == 0) {
+                a.setLotId(++lastLotId);
+            }
+            a.setOwner(this);
+            holdings.add(a);
+            indexName(a);
+        }
+        if (taxLots == null) {
+            taxLots = new TaxLots();
+        }
+        taxLots.attach(this);
+        calculateTotalValue();
     }
 
     /**
@@ -212,7 +888,9 @@ public class Portfolio implements Serializable {
         System.out.println("Currently owned Assets: ");
         int count = 1;
         for(Asset a : assets){
-            System.out.println(count + ") " + a);
+            if (a != null) {
+                System.out.println(count++ + ") " + a);
+            }
         }
     }
 
@@ -222,7 +900,9 @@ public class Portfolio implements Serializable {
     public void print_portfolio(){
         System.out.println("**************************** OWNED ASSETS ****************************");
         for(Asset a : assets){
-            System.out.println(a);
+            if (a != null) {
+                System.out.println(a);
+            }
         }        
         System.out.println("\n----------------------------------------------------------------------\n");
         System.out.println("**************************** LINKED BANK ACCOUNTS ****************************");
@@ -230,9 +910,8 @@ public class Portfolio implements Serializable {
             System.out.println(b);
         }
         System.out.println("\n----------------------------------------------------------------------\n");
-        calculateTotalValue();
         System.out.print("Total Value of Assets: ");
-        System.out.println(this.totalValue);
+        System.out.println(Money.format(this.totalUnits, Money.VALUE_SCALE));
     }
 
     /**
@@ -260,10 +939,9 @@ public class Portfolio implements Serializable {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("Portfolio Summary:\n");
-        sb.append("Assets: ").append(assets.size()).append("\n");
+        sb.append("Assets: ").append(getAssetCount()).append("\n");
         sb.append("Bank Accounts: ").append(bankAccounts.size()).append("\n");
-        calculateTotalValue();
-        sb.append("Total Value: $").append(String.format("%.2f", totalValue)).append("\n");
+        sb.append("Total Value: $").append(String.format("%.2f", Money.value(totalUnits))).append("\n");
         return sb.toString();
     }
 
@@ -273,6 +951,51 @@ public class Portfolio implements Serializable {
      * @return Total value of the portfolio.
      */
     public double getTotalValue(){
-        return this.totalValue;
+        return Money.value(this.totalUnits);
+    }
+
+    /**
+     * Gets the total value of assets exactly.
+     *
+     * @return Total value in {@link Money} value units.
+     */
+    public long getTotalValueUnits(){
+        return this.totalUnits;
+    }
+
+    /**
+     * Gets the total value of halal assets.
+     *
+     * @return Halal value of the portfolio.
+     */
+    public double getHalalValue(){
+        return Money.value(this.halalUnits);
+    }
+
+    /**
+     * Gets the total value of halal assets exactly.
+     *
+     * @return Halal value in {@link Money} value units.
+     */
+    public long getHalalValueUnits(){
+        return this.halalUnits;
+    }
+
+    /**
+     * Returns the value of all assets at their latest market prices.
+     *
+     * @return The market value.
+     */
+    public synchronized double getMarketValue(){
+        return Money.value(this.marketUnits);
+    }
+
+    /**
+     * Returns the value of all assets at their latest market prices exactly.
+     *
+     * @return The market value in {@link Money} value units.
+     */
+    public synchronized long getMarketValueUnits(){
+        return this.marketUnits;
     }
 }
\ No newline at end of file
@@ -0,0 +1,768 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only history of every investor's portfolio changes, for statements as of a past date.
+ *
+ * Each change to a portfolio (a lot added, edited, switched to another state or removed, and
+ * each sale with its realized gain) is kept as an immutable event: the portfolio journals it
+ * in memory when it happens ({@link Journal}), and the events are appended here when the
+ * investor is saved. Every {@value #CHECKPOINT_INTERVAL} events, and at the start of an
+ * investor's history, a checkpoint with the full holdings is written as well.
+ *
+ * The state as of a date is the last checkpoint on or before it plus the events after that
+ * checkpoint up to the date, so a query reads one checkpoint and about
+ * {@value #CHECKPOINT_INTERVAL} events at most however long the history is (more only
+ * when a single save holds more changes, since checkpoints are taken at saves). The times and
+ * positions of every investor's records are kept in memory, read from the record headers
+ * when the ledger is first used; payloads are only read by queries.
+ *
+ * Layout: a header (magic, version) followed by records of
+ * [kind byte][investor id length][investor id][time][payload length][payload].
+ * History starts with the first save after a portfolio was first changed; the state before
+ * that is not known.
+ */
+class PortfolioLedger {
+    static final byte CHECKPOINT = 0;
+    static final byte ADD = 1;
+    static final byte EDIT = 2;
+    static final byte STATE = 3;
+    static final byte REMOVE = 4;
+    static final byte SALE = 5;
+    /** Most events replayed on top of a checkpoint. */
+    static final int CHECKPOINT_INTERVAL = 256;
+
+    private static final int MAGIC = 0x50494C44; // "PILD"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2;
+    private static final Metrics.Histogram RECORD_TIME = Metrics.histogram("ledger.record");
+    private static final Metrics.Histogram AS_OF_TIME = Metrics.histogram("ledger.as_of");
+    private static final Metrics.Counter EVENTS_WRITTEN = Metrics.counter("ledger.events_written");
+    private static final Metrics.Counter EVENTS_REPLAYED = Metrics.counter("ledger.events_replayed");
+
+    private final File file;
+    private final HashMap<String, History> histories = new HashMap<String, History>();
+    private long scanned;
+
+    /**
+     * Creates a ledger backed by the given file. The file is created on the first save.
+     *
+     * @param file The ledger file.
+     */
+    PortfolioLedger(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Prints an investor's holdings and values as of the end of a day.
+     * Usage: {@code java PortfolioLedger <user name> <yyyy-MM-dd>}
+     *
+     * @param args The user name and the date.
+     * @throws Exception if the investors or the ledger cannot be read.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: java PortfolioLedger <user name> <yyyy-MM-dd>");
+            System.exit(2);
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        format.setLenient(false);
+        Date when = endOfDay(format.parse(args[1]));
+        file_manager fm = new file_manager();
+        fm.get_all_investors();
+        for (Investor i : fm.all_investors) {
+            if (i.get_user_name().equalsIgnoreCase(args[0])) {
+                Statement s = fm.statement_as_of(i.get_id(), when);
+                System.out.print(s == null ? "No history on or before " + args[1] + "\n" : s.toString());
+                return;
+            }
+        }
+        System.err.println("No investor " + args[0]);
+        System.exit(1);
+    }
+
+    /**
+     * @param day A date at the start of a day.
+     * @return The last millisecond of that day.
+     */
+    static Date endOfDay(Date day) {
+        return new Date(day.getTime() + TimeUnit.DAYS.toMillis(1) - 1);
+    }
+
+    /**
+     * Appends the journaled events of the given investors, with one write and one fsync,
+     * and the checkpoints that are due. Investors without history get a first checkpoint.
+     * If the write fails the events go back to the portfolios, to be written with the next save.
+     *
+     * @param investors The investors just saved.
+     * @throws IOException if the ledger cannot be written.
+     */
+    synchronized void record(List<Investor> investors) throws IOException {
+        long start = System.nanoTime();
+        catchUp();
+        long base = file.length();
+        ByteArrayOutputStream records = new ByteArrayOutputStream(investors.size() * 256);
+        DataOutputStream out = new DataOutputStream(records);
+        if (base == 0) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+        }
+        ArrayList<Portfolio> drained = new ArrayList<Portfolio>();
+        ArrayList<Journal> journals = new ArrayList<Journal>();
+        long events = 0;
+        try {
+            for (Investor investor : investors) {
+                String id = investor.get_id();
+                Portfolio p = investor.userPortfolio;
+                synchronized (p) {
+                    History h = histories.computeIfAbsent(id, k -> new History());
+                    Journal j = p.takeJournal();
+                    if (j != null) {
+                        drained.add(p);
+                        journals.add(j);
+                    }
+                    if (h.checkpoints == 0) {
+                        if (j != null) {
+                            write(out, base, h, id, CHECKPOINT, j.baselineTime, j.baseline, 0, j.baseline.length);
+                        } else {
+                            byte[] state = Journal.checkpoint(p);
+                            write(out, base, h, id, CHECKPOINT, System.currentTimeMillis(), state, 0, state.length);
+                        }
+                    }
+                    if (j != null) {
+                        ByteBuffer buffer = ByteBuffer.wrap(j.bytes.toByteArray());
+                        while (buffer.hasRemaining()) {
+                            byte kind = buffer.get();
+                            long time = buffer.getLong();
+                            int length = buffer.getInt();
+                            write(out, base, h, id, kind, time, buffer.array(), buffer.position(), length);
+                            buffer.position(buffer.position() + length);
+                            events++;
+                        }
+                    }
+                    if (h.events - h.checkpointEvents[h.checkpoints - 1] >= CHECKPOINT_INTERVAL) {
+                        byte[] state = Journal.checkpoint(p);
+                        write(out, base, h, id, CHECKPOINT, System.currentTimeMillis(), state, 0, state.length);
+                    }
+                }
+            }
+            if (records.size() > 0) {
+                try (FileOutputStream fos = new FileOutputStream(file, true)) {
+                    records.writeTo(fos);
+                    fos.getFD().sync();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // the history above was updated ahead of the write; read it again from the file
+            histories.clear();
+            scanned = 0;
+            for (int i = 0; i < drained.size(); i++) {
+                drained.get(i).restoreJournal(journals.get(i));
+            }
+            throw e;
+        }
+        scanned = base + records.size();
+        EVENTS_WRITTEN.add(events);
+        RECORD_TIME.recordSince(start);
+    }
+
+    /**
+     * Rebuilds an investor's portfolio as it was at the given time.
+     *
+     * @param investorId The investor's id.
+     * @param when       The time of the statement.
+     * @return The holdings and values at that time, or null if the history starts later.
+     * @throws IOException if the ledger cannot be read.
+     */
+    synchronized Statement asOf(String investorId, Date when) throws IOException {
+        long start = System.nanoTime();
+        catchUp();
+        History h = histories.get(investorId);
+        long t = when.getTime();
+        int c = h == null ? 0 : upperBound(h.checkpointTimes, 0, h.checkpoints, t);
+        if (c == 0) {
+            return null;
+        }
+        c--;
+        int from = h.checkpointEvents[c];
+        int to = upperBound(h.eventTimes, from, h.events, t);
+        LinkedHashMap<Long, Asset> lots = new LinkedHashMap<Long, Asset>();
+        long realized;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            DataInputStream checkpoint = new DataInputStream(new ByteArrayInputStream(payload(raf, h.checkpointOffsets[c])));
+            realized = checkpoint.readLong();
+            for (int n = checkpoint.readInt(); n > 0; n--) {
+                Asset a = readLot(checkpoint);
+                lots.put(a.getLotId(), a);
+            }
+            for (int i = from; i < to; i++) {
+                DataInputStream event = new DataInputStream(new ByteArrayInputStream(payload(raf, h.eventOffsets[i])));
+                switch (h.eventKinds[i]) {
+                    case ADD:
+                    case EDIT:
+                    case STATE:
+                        Asset a = readLot(event);
+                        lots.put(a.getLotId(), a);
+                        break;
+                    case REMOVE:
+                        lots.remove(event.readLong());
+                        break;
+                    case SALE:
+                        event.readUTF();
+                        event.readLong();
+                        long proceeds = event.readLong();
+                        realized += proceeds - event.readLong();
+                        break;
+                    default:
+                        throw new IOException("Unknown ledger event " + h.eventKinds[i]);
+                }
+            }
+        }
+        EVENTS_REPLAYED.add(to - from);
+        AS_OF_TIME.recordSince(start);
+        return new Statement(when, new ArrayList<Asset>(lots.values()), realized, to - from);
+    }
+
+    /**
+     * Reads an investor's saved sales.
+     *
+     * @param investorId The investor's id.
+     * @return The sales, oldest first; empty if there are none.
+     * @throws IOException if the ledger cannot be read.
+     */
+    synchronized List<PastSale> sales(String investorId) throws IOException {
+        catchUp();
+        History h = histories.get(investorId);
+        ArrayList<PastSale> sales = new ArrayList<PastSale>();
+        if (h == null) {
+            return sales;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            for (int i = 0; i < h.events; i++) {
+                if (h.eventKinds[i] == SALE) {
+                    DataInputStream event = new DataInputStream(new ByteArrayInputStream(payload(raf, h.eventOffsets[i])));
+                    sales.add(new PastSale(new Date(h.eventTimes[i]), event.readUTF(), event.readLong(), event.readLong(), event.readLong()));
+                }
+            }
+        }
+        return sales;
+    }
+
+    /**
+     * @param investorId The investor's id.
+     * @return The number of events saved for the investor.
+     * @throws IOException if the ledger cannot be read.
+     */
+    synchronized int eventCount(String investorId) throws IOException {
+        catchUp();
+        History h = histories.get(investorId);
+        return h == null ? 0 : h.events;
+    }
+
+    /**
+     * Writes one record into the batch and notes it in the investor's history.
+     *
+     * @param out     The batch.
+     * @param base    The file length the batch will be appended at.
+     * @param h       The investor's history.
+     * @param id      The investor's id.
+     * @param kind    The record kind.
+     * @param time    When the event happened; moved forward if earlier than the history's end.
+     * @param payload Buffer holding the payload.
+     * @param offset  Start of the payload in the buffer.
+     * @param length  Length of the payload.
+     * @throws IOException if the batch cannot be written.
+     */
+    private static void write(DataOutputStream out, long base, History h, String id, byte kind, long time,
+                              byte[] payload, int offset, int length) throws IOException {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        long at = Math.max(time, h.lastTime);
+        out.writeByte(kind);
+        out.writeShort(idBytes.length);
+        out.write(idBytes);
+        out.writeLong(at);
+        out.writeInt(length);
+        h.add(kind, at, base + out.size());
+        out.write(payload, offset, length);
+    }
+
+    /**
+     * Reads the records appended to the file since it was last read, e.g. by another
+     * store in the same directory. The first time, an incomplete record left at the end by
+     * an interrupted write is cut off.
+     *
+     * @throws IOException if the file cannot be read, or is not a ledger.
+     */
+    private void catchUp() throws IOException {
+        long length = file.length();
+        if (length == scanned) {
+            return;
+        }
+        if (length < scanned) {
+            // the file was replaced
+            histories.clear();
+            scanned = 0;
+        }
+        boolean first = scanned == 0;
+        long position = scanned;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (first) {
+                if (length < HEADER_SIZE || in.readInt() != MAGIC) {
+                    throw new IOException("Not a portfolio ledger: " + file);
+                }
+                if (in.readShort() != VERSION) {
+                    throw new IOException("Unsupported portfolio ledger version in " + file);
+                }
+                position = HEADER_SIZE;
+            } else {
+                in.skipNBytes(position);
+            }
+            try {
+                while (position < length) {
+                    byte kind = in.readByte();
+                    byte[] idBytes = new byte[in.readUnsignedShort()];
+                    in.readFully(idBytes);
+                    long time = in.readLong();
+                    int payloadLength = in.readInt();
+                    long payloadOffset = position + 1 + 2 + idBytes.length + 8 + 4;
+                    if (payloadOffset + payloadLength > length) {
+                        break;
+                    }
+                    in.skipNBytes(payloadLength);
+                    histories.computeIfAbsent(new String(idBytes, StandardCharsets.UTF_8), k -> new History())
+                            .add(kind, time, payloadOffset);
+                    position = payloadOffset + payloadLength;
+                }
+            } catch (EOFException torn) {
+                // position already points past the last complete record
+            }
+        }
+        if (first && position < length) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(position);
+            }
+        }
+        scanned = position;
+    }
+
+    /**
+     * @param raf    The ledger file.
+     * @param offset Offset of a record's payload.
+     * @return The payload.
+     * @throws IOException if the file cannot be read.
+     */
+    private static byte[] payload(RandomAccessFile raf, long offset) throws IOException {
+        raf.seek(offset - 4);
+        byte[] payload = new byte[raf.readInt()];
+        raf.readFully(payload);
+        return payload;
+    }
+
+    /**
+     * Reads a lot written by {@link Journal#writeLot}, as a detached asset.
+     *
+     * @param in The payload.
+     * @return The lot.
+     * @throws IOException if the payload is cut short.
+     */
+    private static Asset readLot(DataInputStream in) throws IOException {
+        long lotId = in.readLong();
+        String name = in.readUTF();
+        long quantity = in.readLong();
+        long price = in.readLong();
+        long date = in.readLong();
+        String type = in.readUTF();
+        byte s = in.readByte();
+        boolean halal = in.readBoolean();
+        Asset a = new Asset.AssetBuilder()
+                .SetName(name)
+                .SetQuantityUnits(quantity)
+                .SetPurchasePriceUnits(price)
+                .SetPurchaseDate(date == Long.MIN_VALUE ? null : new Date(date))
+                .SetAssetType(type)
+                .SetIsHalal(halal)
+                .SetAssetState()
+                .Build();
+        a.switchState(s < 0 ? null : state.values()[s]);
+        a.setLotId(lotId);
+        return a;
+    }
+
+    /**
+     * @param sorted Sorted values.
+     * @param from   First index to search.
+     * @param to     Index after the last one to search.
+     * @param key    A value.
+     * @return The index after the last element less than or equal to the key.
+     */
+    private static int upperBound(long[] sorted, int from, int to, long key) {
+        int low = from, high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Where one investor's records are: the time, kind and payload offset of each event,
+     * and of each checkpoint with the number of events before it. Times never go back.
+     */
+    private static final class History {
+        long[] eventTimes = new long[4];
+        long[] eventOffsets = new long[4];
+        byte[] eventKinds = new byte[4];
+        int events;
+        long[] checkpointTimes = new long[1];
+        long[] checkpointOffsets = new long[1];
+        int[] checkpointEvents = new int[1];
+        int checkpoints;
+        long lastTime = Long.MIN_VALUE;
+
+        /**
+         * @param kind          The record kind.
+         * @param time          The record time.
+         * @param payloadOffset Offset of the record's payload in the file.
+         */
+        void add(byte kind, long time, long payloadOffset) {
+            lastTime = Math.max(lastTime, time);
+            if (kind == CHECKPOINT) {
+                if (checkpoints == checkpointTimes.length) {
+                    checkpointTimes = Arrays.copyOf(checkpointTimes, checkpoints * 2);
+                    checkpointOffsets = Arrays.copyOf(checkpointOffsets, checkpoints * 2);
+                    checkpointEvents = Arrays.copyOf(checkpointEvents, checkpoints * 2);
+                }
+                checkpointTimes[checkpoints] = lastTime;
+                checkpointOffsets[checkpoints] = payloadOffset;
+                checkpointEvents[checkpoints] = events;
+                checkpoints++;
+            } else {
+                if (events == eventTimes.length) {
+                    eventTimes = Arrays.copyOf(eventTimes, events * 2);
+                    eventOffsets = Arrays.copyOf(eventOffsets, events * 2);
+                    eventKinds = Arrays.copyOf(eventKinds, events * 2);
+                }
+                eventTimes[events] = lastTime;
+                eventOffsets[events] = payloadOffset;
+                eventKinds[events] = kind;
+                events++;
+            }
+        }
+    }
+
+    /**
+     * The changes made to one portfolio since it was last saved, encoded as they happen,
+     * and its state before the first of them. Written while holding the portfolio's monitor.
+     */
+    static final class Journal {
+        final long baselineTime;
+        final byte[] baseline;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final ByteArrayOutputStream payload = new ByteArrayOutputStream(96);
+        private final DataOutputStream payloadOut = new DataOutputStream(payload);
+
+        /**
+         * Starts a journal, taking the portfolio's current state as its baseline.
+         *
+         * @param p The portfolio, before its first change.
+         */
+        Journal(Portfolio p) {
+            this.baselineTime = System.currentTimeMillis();
+            this.baseline = checkpoint(p);
+        }
+
+        /**
+         * Journals a lot added, edited or switched to another state.
+         *
+         * @param kind ADD, EDIT or STATE.
+         * @param a    The lot after the change.
+         */
+        void lot(byte kind, Asset a) {
+            try {
+                payload.reset();
+                writeLot(payloadOut, a);
+                append(kind);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Journals a lot removed.
+         *
+         * @param a The lot.
+         */
+        void removed(Asset a) {
+            try {
+                payload.reset();
+                payloadOut.writeLong(a.getLotId());
+                append(REMOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Journals a sale; its lots are journaled as edits.
+         *
+         * @param sale The sale.
+         */
+        void sale(TaxLots.Sale sale) {
+            try {
+                payload.reset();
+                payloadOut.writeUTF(sale.getAsset() == null ? "" : sale.getAsset());
+                payloadOut.writeLong(sale.getQuantityUnits());
+                payloadOut.writeLong(sale.getProceedsUnits());
+                payloadOut.writeLong(sale.getCostUnits());
+                append(SALE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Adds the events of a later journal of the same portfolio after this one's.
+         *
+         * @param later The later journal.
+         */
+        void append(Journal later) {
+            byte[] events = later.bytes.toByteArray();
+            bytes.write(events, 0, events.length);
+        }
+
+        /**
+         * Adds the payload as one event: [kind][time][payload length][payload].
+         *
+         * @param kind The event kind.
+         * @throws IOException never; the journal is in memory.
+         */
+        private void append(byte kind) throws IOException {
+            out.writeByte(kind);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(payload.size());
+            payload.writeTo(out);
+        }
+
+        /**
+         * Encodes a portfolio's state: its realized gain and all its lots.
+         *
+         * @param p The portfolio; read while holding its monitor.
+         * @return The checkpoint payload.
+         */
+        static byte[] checkpoint(Portfolio p) {
+            synchronized (p) {
+                int count = p.getAssetCount();
+                ByteArrayOutputStream state = new ByteArrayOutputStream(16 + count * 64);
+                DataOutputStream out = new DataOutputStream(state);
+                try {
+                    out.writeLong(p.getRealizedGainUnits());
+                    out.writeInt(count);
+                    for (int i = 0; i < count; i++) {
+                        writeLot(out, p.get_asset(i));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return state.toByteArray();
+            }
+        }
+
+        /**
+         * Encodes one lot.
+         *
+         * @param out Where to write.
+         * @param a   The lot.
+         * @throws IOException if the stream cannot be written.
+         */
+        private static void writeLot(DataOutputStream out, Asset a) throws IOException {
+            out.writeLong(a.getLotId());
+            out.writeUTF(a.getName() == null ? "" : a.getName());
+            out.writeLong(a.getQuantityUnits());
+            out.writeLong(a.getPurchasePriceUnits());
+            out.writeLong(a.getPurchaseDate() == null ? Long.MIN_VALUE : a.getPurchaseDate().getTime());
+            out.writeUTF(a.getAssetType() == null ? "" : a.getAssetType());
+            out.writeByte(a.getAssetState() == null ? -1 : a.getAssetState().ordinal());
+            out.writeBoolean(a.IsItHalal());
+        }
+    }
+
+    /**
+     * One saved sale: when it was made, the asset, the quantity sold and its proceeds and
+     * cost. Amounts are in {@link Money} units.
+     */
+    public static final class PastSale {
+        private final Date date;
+        private final String asset;
+        private final long quantityUnits;
+        private final long proceedsUnits;
+        private final long costUnits;
+
+        /**
+         * @param date          When the sale was made.
+         * @param asset         The asset name.
+         * @param quantityUnits The quantity sold.
+         * @param proceedsUnits The proceeds.
+         * @param costUnits     The purchase cost of the quantity sold.
+         */
+        PastSale(Date date, String asset, long quantityUnits, long proceedsUnits, long costUnits) {
+            this.date = date;
+            this.asset = asset;
+            this.quantityUnits = quantityUnits;
+            this.proceedsUnits = proceedsUnits;
+            this.costUnits = costUnits;
+        }
+
+        /**
+         * @return When the sale was made.
+         */
+        public Date getDate() {
+            return date;
+        }
+
+        /**
+         * @return The asset name.
+         */
+        public String getAsset() {
+            return asset;
+        }
+
+        /**
+         * @return The quantity sold, in quantity units.
+         */
+        public long getQuantityUnits() {
+            return quantityUnits;
+        }
+
+        /**
+         * @return The proceeds, in value units.
+         */
+        public long getProceedsUnits() {
+            return proceedsUnits;
+        }
+
+        /**
+         * @return The purchase cost of the quantity sold, in value units.
+         */
+        public long getCostUnits() {
+            return costUnits;
+        }
+
+        /**
+         * @return The proceeds less the cost, in value units; negative for a loss.
+         */
+        public long getRealizedGainUnits() {
+            return proceedsUnits - costUnits;
+        }
+    }
+
+    /**
+     * A portfolio as it was at some time: its lots and their values at purchase price, and
+     * the realized gain of the sales up to then. Amounts are in {@link Money} units.
+     */
+    public static final class Statement {
+        private final Date date;
+        private final List<Asset> assets;
+        private final long realizedUnits;
+        private final int eventsReplayed;
+        private final long totalUnits;
+        private final long halalUnits;
+
+        /**
+         * @param date           The time of the statement.
+         * @param assets         The lots held then, detached from any portfolio.
+         * @param realizedUnits  The realized gain up to then.
+         * @param eventsReplayed Events read on top of the checkpoint.
+         */
+        Statement(Date date, List<Asset> assets, long realizedUnits, int eventsReplayed) {
+            this.date = date;
+            this.assets = Collections.unmodifiableList(assets);
+            this.realizedUnits = realizedUnits;
+            this.eventsReplayed = eventsReplayed;
+            long total = 0, halal = 0;
+            for (Asset a : assets) {
+                long value = a.getValueUnits();
+                total += value;
+                if (a.IsItHalal()) {
+                    halal += value;
+                }
+            }
+            this.totalUnits = total;
+            this.halalUnits = halal;
+        }
+
+        /**
+         * @return The time of the statement.
+         */
+        public Date getDate() {
+            return date;
+        }
+
+        /**
+         * @return The lots held at that time, in the order they were added (read-only).
+         */
+        public List<Asset> getAssets() {
+            return assets;
+        }
+
+        /**
+         * @return The value of the lots at purchase price, in value units.
+         */
+        public long getTotalValueUnits() {
+            return totalUnits;
+        }
+
+        /**
+         * @return The value of the halal lots at purchase price, in value units.
+         */
+        public long getHalalValueUnits() {
+            return halalUnits;
+        }
+
+        /**
+         * @return The realized gain of the sales up to that time, in value units.
+         */
+        public long getRealizedGainUnits() {
+            return realizedUnits;
+        }
+
+        /**
+         * @return How many events were replayed on top of the checkpoint.
+         */
+        public int getEventsReplayed() {
+            return eventsReplayed;
+        }
+
+        /**
+         * @return The statement as readable text.
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Statement as of ").append(date).append('\n');
+            for (Asset a : assets) {
+                if (a.getQuantityUnits() != 0) {
+                    sb.append(a);
+                }
+            }
+            sb.append("Total value:   ").append(Money.format(totalUnits, Money.VALUE_SCALE)).append('\n');
+            sb.append("Halal value:   ").append(Money.format(halalUnits, Money.VALUE_SCALE)).append('\n');
+            sb.append("Realized gain: ").append(Money.format(realizedUnits, Money.VALUE_SCALE)).append('\n');
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one change to a portfolio's holdings.
+ */
+@Name("personalinvestment.PortfolioMutation")
+@Label("Portfolio Mutation")
+@Category({"Personal Investment", "Portfolio"})
+@Description("An asset added to, sold from, edited in or removed from a portfolio")
+final class PortfolioMutationEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    @Description("add, sell, edit or remove")
+    String operation;
+
+    @Label("Asset")
+    String asset;
+
+    @Label("Assets")
+    @Description("Number of assets in the portfolio afterwards")
+    int assets;
+
+    @Label("Total Value")
+    @Description("Value of the portfolio at purchase prices afterwards")
+    double totalValue;
+}
@@ -0,0 +1,261 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Marks portfolios to market from a stream of price ticks.
+ *
+ * The engine keeps a reverse index from symbol (the case-insensitive asset name) to every
+ * tracked holding with that name, across all investors. A tick only visits the holdings of
+ * its symbol and moves each owning portfolio's market value by the change in that holding's
+ * value; nothing else is revalued. Tracked portfolios report added, removed and renamed
+ * holdings, so the index follows them.
+ *
+ * Ticks come from a file of "SYMBOL,price" lines or from a simulated random-walk feed.
+ */
+public class PriceEngine implements Portfolio.HoldingListener {
+    private final ConcurrentHashMap<String, Set<Asset>> holdingsBySymbol = new ConcurrentHashMap<String, Set<Asset>>();
+    private final ConcurrentHashMap<String, Long> lastPrices = new ConcurrentHashMap<String, Long>();
+    private long ticks;
+
+    /**
+     * Loads every investor, replays a tick file or a simulated feed, and prints the
+     * firm's market value and the tick rate.
+     * Usage: {@code java PriceEngine <ticks.csv>} or {@code java PriceEngine --simulate <count>}
+     *
+     * @param args The tick file, or --simulate and the number of ticks.
+     * @throws Exception if the investors or the tick file cannot be read.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java PriceEngine <ticks.csv> | --simulate <count>");
+            System.exit(2);
+        }
+        file_manager fm = new file_manager();
+        fm.get_all_investors();
+        PriceEngine engine = new PriceEngine();
+        List<Portfolio> portfolios = new ArrayList<Portfolio>();
+        for (Investor i : fm.all_investors) {
+            engine.track(i.userPortfolio);
+            portfolios.add(i.userPortfolio);
+        }
+        long start = System.nanoTime();
+        long count = args[0].equals("--simulate")
+                ? engine.simulate(Long.parseLong(args[1]), new Random())
+                : engine.replay(new File(args[0]));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double market = 0, cost = 0;
+        for (Portfolio p : portfolios) {
+            market += p.getMarketValue();
+            cost += p.getTotalValue();
+        }
+        System.out.printf("%d ticks over %d symbols in %.2f s (%.0f ticks/s)%n", count,
+                engine.symbolCount(), seconds, count / seconds);
+        System.out.printf("Market value %.2f, purchase value %.2f%n", market, cost);
+    }
+
+    /**
+     * Starts following a portfolio: indexes its holdings, prices them at the last known
+     * prices, and listens for changes.
+     *
+     * @param p The portfolio.
+     */
+    public void track(Portfolio p) {
+        synchronized (p) {
+            p.addHoldingListener(this);
+            for (int i = 0; i < p.getAssetCount(); i++) {
+                assetAdded(p.get_asset(i));
+            }
+        }
+    }
+
+    /**
+     * Stops following a portfolio and removes its holdings from the index.
+     *
+     * @param p The portfolio.
+     */
+    public void untrack(Portfolio p) {
+        synchronized (p) {
+            p.removeHoldingListener(this);
+            for (int i = 0; i < p.getAssetCount(); i++) {
+                assetRemoved(p.get_asset(i));
+            }
+        }
+    }
+
+    /**
+     * Applies one price tick to every holding of the symbol.
+     *
+     * @param symbol The symbol (asset name), any case.
+     * @param price  The new price; must be positive.
+     */
+    public void onTick(String symbol, float price) {
+        if (!(price > 0)) {
+            throw new IllegalArgumentException("price must be positive: " + price);
+        }
+        String key = key(symbol);
+        long units = Money.priceOf(price);
+        lastPrices.put(key, units);
+        Set<Asset> holdings = holdingsBySymbol.get(key);
+        if (holdings != null) {
+            for (Asset a : holdings) {
+                Portfolio owner = a.getOwner();
+                if (owner != null) {
+                    owner.applyMarketPrice(a, units);
+                }
+            }
+        }
+        ticks++;
+    }
+
+    /**
+     * Applies every tick of a file. Each line is "SYMBOL,price"; blank lines, lines starting
+     * with # and lines that do not parse are skipped.
+     *
+     * @param file The tick file.
+     * @return The number of ticks applied.
+     * @throws IOException if the file cannot be read.
+     */
+    public long replay(File file) throws IOException {
+        long applied = 0;
+        try (BufferedReader in = new BufferedReader(new FileReader(file), 1 << 16)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int comma = line.lastIndexOf(',');
+                if (comma <= 0 || line.startsWith("#")) {
+                    continue;
+                }
+                float price;
+                try {
+                    price = Float.parseFloat(line.substring(comma + 1).trim());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (price > 0) {
+                    onTick(line.substring(0, comma).trim(), price);
+                    applied++;
+                }
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Feeds simulated ticks: each one moves a random known symbol's price by up to 1% up
+     * or down, starting from the average purchase price of its holdings.
+     *
+     * @param count  The number of ticks.
+     * @param random The source of randomness.
+     * @return The number of ticks applied.
+     */
+    public long simulate(long count, Random random) {
+        ArrayList<String> symbols = new ArrayList<String>(holdingsBySymbol.keySet());
+        if (symbols.isEmpty()) {
+            return 0;
+        }
+        float[] prices = new float[symbols.size()];
+        for (int s = 0; s < prices.length; s++) {
+            Long last = lastPrices.get(symbols.get(s));
+            prices[s] = last != null ? (float) Money.price(last) : averagePurchasePrice(symbols.get(s));
+        }
+        for (long t = 0; t < count; t++) {
+            int s = random.nextInt(prices.length);
+            prices[s] = Math.max(0.01f, prices[s] * (1 + (random.nextFloat() - 0.5f) * 0.02f));
+            onTick(symbols.get(s), prices[s]);
+        }
+        return count;
+    }
+
+    /**
+     * @param symbol A symbol.
+     * @return The last price seen for it, or null.
+     */
+    public Float lastPrice(String symbol) {
+        Long last = lastPrices.get(key(symbol));
+        return last == null ? null : (float) Money.price(last);
+    }
+
+    /**
+     * @return The number of symbols with at least one tracked holding.
+     */
+    public int symbolCount() {
+        return holdingsBySymbol.size();
+    }
+
+    /**
+     * @return The number of ticks applied so far.
+     */
+    public long tickCount() {
+        return ticks;
+    }
+
+    @Override
+    public void assetAdded(Asset a) {
+        String key = key(a.getName());
+        holdingsBySymbol.computeIfAbsent(key, k -> ConcurrentHashMap.<Asset>newKeySet()).add(a);
+        Long last = lastPrices.get(key);
+        if (last != null) {
+            a.getOwner().applyMarketPrice(a, last.longValue());
+        }
+    }
+
+    @Override
+    public void assetRemoved(Asset a) {
+        unindex(a, key(a.getName()));
+    }
+
+    @Override
+    public void assetRenamed(Asset a, String oldName) {
+        unindex(a, key(oldName));
+        String key = key(a.getName());
+        holdingsBySymbol.computeIfAbsent(key, k -> ConcurrentHashMap.<Asset>newKeySet()).add(a);
+        Long last = lastPrices.get(key);
+        // the old symbol's price no longer applies
+        a.getOwner().applyMarketPrice(a, last != null ? last.longValue() : 0L);
+    }
+
+    /**
+     * Removes a holding from the index under the given symbol.
+     *
+     * @param a   The asset.
+     * @param key The lower-cased symbol it was indexed under.
+     */
+    private void unindex(Asset a, String key) {
+        holdingsBySymbol.computeIfPresent(key, (k, holdings) -> {
+            holdings.remove(a);
+            return holdings.isEmpty() ? null : holdings;
+        });
+    }
+
+    /**
+     * @param symbol A symbol.
+     * @return The average purchase price of its tracked holdings.
+     */
+    private float averagePurchasePrice(String symbol) {
+        Set<Asset> holdings = holdingsBySymbol.get(symbol);
+        double sum = 0;
+        int n = 0;
+        if (holdings != null) {
+            for (Asset a : holdings) {
+                sum += a.getPurchasePrice();
+                n++;
+            }
+        }
+        return n == 0 || sum <= 0 ? 1f : (float) (sum / n);
+    }
+
+    /**
+     * @param symbol A symbol or asset name.
+     * @return The key used in the index.
+     */
+    private static String key(String symbol) {
+        return symbol == null ? "" : symbol.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * Thrown when an investor is saved from a copy that is older than the stored one,
+ * i.e. someone else saved the investor after this copy was read. Saving it would
+ * overwrite their changes, so the save is rejected; read the investor again and retry.
+ */
+public class StaleInvestorException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs the exception for one investor.
+     *
+     * @param id              The investor's id.
+     * @param saved_version   The version of the copy being saved.
+     * @param current_version The version currently stored.
+     */
+    public StaleInvestorException(String id, long saved_version, long current_version) {
+        super("Investor " + id + " was changed by someone else (version " + saved_version
+                + " is older than the stored version " + current_version + ")");
+    }
+}
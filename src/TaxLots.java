@@ -0,0 +1,488 @@
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The tax lots of a portfolio: every asset (lot) is a purchase, and the lots sharing a
+ * name, ignoring case, are one position. A sale of a position takes its quantity from the
+ * lots in the order of the {@link LotMethod}, and records the realized gain, its proceeds
+ * less the purchase cost of the quantity taken.
+ *
+ * The open lots of a position are kept in a deque sorted by purchase date, built the first
+ * time the position is sold from and then kept up to date through the portfolio's
+ * {@link Portfolio.HoldingListener} callbacks. A sale takes from the head (FIFO) or the tail
+ * (LIFO) and drops the lots it empties, so each lot is dropped once and a sale costs its
+ * number of lots touched, not the size of the position. Lots removed from the portfolio are
+ * only marked closed in their position and dropped the same way when a sale reaches them.
+ * Emptied lots stay in the portfolio, marked sold, as before.
+ *
+ * The realized gain is a running total saved with the portfolio. The sales themselves are
+ * not kept here: each one is journaled, and the saved ones are read back from the ledger
+ * ({@link PortfolioLedger#sales}). Portfolios saved when the sales were kept still read;
+ * their list is skipped. All methods are called while holding the portfolio's monitor.
+ */
+class TaxLots implements Serializable, Portfolio.HoldingListener {
+    private static final long serialVersionUID = 1L;
+    private static final Metrics.Counter LOTS_TAKEN = Metrics.counter("portfolio.lots_consumed");
+    private static final Comparator<Asset> BY_PURCHASE_DATE = Comparator.comparingLong(TaxLots::purchaseTime);
+
+    private LotMethod method = LotMethod.FIFO;
+    private long realizedUnits;
+    private transient Portfolio portfolio;
+    private transient HashMap<String, Position> positions;
+
+    /**
+     * Attaches the lots to their portfolio. Called when the portfolio is created or read.
+     *
+     * @param p The portfolio.
+     */
+    void attach(Portfolio p) {
+        this.portfolio = p;
+        this.positions = new HashMap<String, Position>();
+        if (method == null) {
+            method = LotMethod.FIFO;
+        }
+        p.addHoldingListener(this);
+    }
+
+    /**
+     * @return The method used when a sale does not name one.
+     */
+    LotMethod getMethod() {
+        return method;
+    }
+
+    /**
+     * @param method FIFO or LIFO.
+     */
+    void setMethod(LotMethod method) {
+        if (method == null || method == LotMethod.SPECIFIC) {
+            throw new IllegalArgumentException("default lot method must be FIFO or LIFO");
+        }
+        this.method = method;
+    }
+
+    /**
+     * @return The realized gain of all sales so far, in {@link Money} value units.
+     */
+    long getRealizedUnits() {
+        return realizedUnits;
+    }
+
+    /**
+     * @param name An asset name, any case.
+     * @return The quantity held in that position, in quantity units.
+     */
+    long openQuantity(String name) {
+        return position(nameKey(name)).openUnits;
+    }
+
+    /**
+     * Sells a quantity of a position, taking it from the lots in the order of the method.
+     *
+     * @param name          The asset name, any case.
+     * @param quantityUnits The quantity to sell, in quantity units.
+     * @param priceUnits    The sale price in price units, or 0 to sell at each lot's market price.
+     * @param how           FIFO or LIFO; null for the default method.
+     * @return The sale.
+     * @throws IllegalArgumentException if the position holds less than the quantity.
+     */
+    Sale sell(String name, long quantityUnits, long priceUnits, LotMethod how) {
+        LotMethod m = how == null ? method : how;
+        if (m == LotMethod.SPECIFIC) {
+            throw new IllegalArgumentException("a specific-lot sale needs the lot");
+        }
+        if (quantityUnits <= 0) {
+            throw new IllegalArgumentException("quantity must be positive");
+        }
+        Position position = position(nameKey(name));
+        if (position.openUnits < quantityUnits) {
+            throw new IllegalArgumentException("only " + Money.format(position.openUnits, Money.QUANTITY_SCALE)
+                    + " of " + name + " held");
+        }
+        position.sort();
+        Sale sale = new Sale(name, m);
+        long left = quantityUnits;
+        while (left > 0) {
+            Asset lot = m == LotMethod.FIFO ? position.lots.peekFirst() : position.lots.peekLast();
+            if (lot == null) {
+                throw new IllegalStateException("position " + name + " out of sync with its lots");
+            }
+            boolean closed = position.dropIfClosed(lot);
+            if (!closed) {
+                long take = Math.min(left, lot.getQuantityUnits());
+                if (take > 0) {
+                    take(lot, take, priceUnits, sale);
+                    left -= take;
+                }
+            }
+            if (closed || lot.getQuantityUnits() == 0) {
+                if (m == LotMethod.FIFO) {
+                    position.lots.pollFirst();
+                } else {
+                    position.lots.pollLast();
+                }
+            }
+        }
+        return record(sale);
+    }
+
+    /**
+     * Sells a quantity from one chosen lot.
+     *
+     * @param lot           A lot of the portfolio.
+     * @param quantityUnits The quantity to sell, in quantity units.
+     * @param priceUnits    The sale price in price units, or 0 to sell at the lot's market price.
+     * @return The sale.
+     * @throws IllegalArgumentException if the lot holds less than the quantity.
+     */
+    Sale sellLot(Asset lot, long quantityUnits, long priceUnits) {
+        if (quantityUnits < 0 || quantityUnits > lot.getQuantityUnits()) {
+            throw new IllegalArgumentException("lot holds " + Money.format(lot.getQuantityUnits(), Money.QUANTITY_SCALE));
+        }
+        Sale sale = new Sale(lot.getName(), LotMethod.SPECIFIC);
+        // an emptied lot stays in its position's deque until a sale reaches it
+        take(lot, quantityUnits, priceUnits, sale);
+        return record(sale);
+    }
+
+    /**
+     * Takes a quantity out of one lot and adds it to a sale. An emptied lot is marked sold.
+     *
+     * @param lot           The lot.
+     * @param quantityUnits The quantity taken.
+     * @param priceUnits    The sale price, or 0 for the lot's market price.
+     * @param sale          The sale being made.
+     */
+    private void take(Asset lot, long quantityUnits, long priceUnits, Sale sale) {
+        long price = priceUnits > 0 ? priceUnits : lot.getMarketPriceUnits();
+        long costBefore = lot.getValueUnits();
+        long remaining = lot.getQuantityUnits() - quantityUnits;
+        lot.updateAssetUnits(lot.getName(), remaining, lot.getPurchasePriceUnits(), lot.getAssetType(), lot.IsItHalal());
+        if (remaining == 0) {
+            lot.switchState(state.sold);
+        }
+        sale.add(lot, quantityUnits, price, costBefore - lot.getValueUnits(), Money.valueOf(quantityUnits, price));
+        LOTS_TAKEN.inc();
+    }
+
+    /**
+     * Journals a finished sale and adds its gain to the realized total.
+     *
+     * @param sale The sale.
+     * @return The sale.
+     */
+    private Sale record(Sale sale) {
+        portfolio.journalSale(sale);
+        realizedUnits += sale.getRealizedGainUnits();
+        return sale;
+    }
+
+    /**
+     * Returns a position, building it from the portfolio's lots on first use.
+     *
+     * @param key The position's name key.
+     * @return The position.
+     */
+    private Position position(String key) {
+        Position position = positions.get(key);
+        if (position == null) {
+            position = new Position();
+            for (Asset a : portfolio.searchForAssets(key)) {
+                position.add(a);
+            }
+            positions.put(key, position);
+        }
+        return position;
+    }
+
+    @Override
+    public void assetAdded(Asset a) {
+        String key = nameKey(a.getName());
+        Position position = positions.get(key);
+        if (position != null && position.closed != null && position.closed.contains(a)) {
+            // a removed lot added back may still be in the deque; rebuild rather than search
+            positions.remove(key);
+        } else if (position != null) {
+            position.add(a);
+        }
+    }
+
+    @Override
+    public void assetRemoved(Asset a) {
+        Position position = positions.get(nameKey(a.getName()));
+        if (position != null) {
+            position.openUnits -= Math.max(0, a.getQuantityUnits());
+            // searching the deque would cost the size of the position; sales drop it instead
+            position.close(a);
+        }
+    }
+
+    @Override
+    public void assetRenamed(Asset a, String oldName) {
+        // rare: both positions are rebuilt when next sold from
+        positions.remove(nameKey(oldName));
+        positions.remove(nameKey(a.getName()));
+    }
+
+    @Override
+    public void assetQuantityChanged(Asset a, long quantityBefore) {
+        String key = nameKey(a.getName());
+        Position position = positions.get(key);
+        if (position == null) {
+            return;
+        }
+        if (quantityBefore == 0) {
+            // an emptied lot filled again may still be in the deque; rebuild rather than search
+            positions.remove(key);
+        } else {
+            position.openUnits += a.getQuantityUnits() - quantityBefore;
+        }
+    }
+
+    /**
+     * @param a A lot.
+     * @return Its purchase time; lots without a date count as the oldest.
+     */
+    private static long purchaseTime(Asset a) {
+        return a.getPurchaseDate() == null ? Long.MIN_VALUE : a.getPurchaseDate().getTime();
+    }
+
+    /**
+     * @param name An asset name.
+     * @return The key of its position.
+     */
+    private static String nameKey(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The open lots of one position, oldest purchase first, and their total quantity.
+     * The deque may still hold emptied lots and closed (removed) ones; sales skip and drop them.
+     */
+    private static final class Position {
+        final ArrayDeque<Asset> lots = new ArrayDeque<Asset>();
+        long openUnits;
+        boolean sorted = true;
+        /** Lots removed from the portfolio, possibly still in the deque; null until the first. */
+        Set<Asset> closed;
+
+        /**
+         * Adds a lot, keeping the order when it is bought after the newest or before the
+         * oldest lot, as when buying over time; otherwise the deque is sorted before the next sale.
+         *
+         * @param a The lot.
+         */
+        void add(Asset a) {
+            long quantity = a.getQuantityUnits();
+            if (quantity <= 0) {
+                return;
+            }
+            openUnits += quantity;
+            long t = purchaseTime(a);
+            if (lots.isEmpty() || t >= purchaseTime(lots.peekLast())) {
+                lots.addLast(a);
+            } else if (t < purchaseTime(lots.peekFirst())) {
+                lots.addFirst(a);
+            } else {
+                lots.addLast(a);
+                sorted = false;
+            }
+        }
+
+        /**
+         * Marks a lot as removed from the portfolio, to be dropped when a sale reaches it.
+         *
+         * @param a The lot.
+         */
+        void close(Asset a) {
+            if (closed == null) {
+                closed = Collections.newSetFromMap(new IdentityHashMap<Asset, Boolean>());
+            }
+            closed.add(a);
+        }
+
+        /**
+         * Takes a lot off the closed ones if it is one; called as a sale drops it.
+         *
+         * @param a A lot at the head or tail of the deque.
+         * @return True if the lot was removed from the portfolio.
+         */
+        boolean dropIfClosed(Asset a) {
+            return closed != null && closed.remove(a);
+        }
+
+        /**
+         * Restores the purchase-date order after out-of-order additions. Lots bought the
+         * same day keep the order they were added in.
+         */
+        void sort() {
+            if (sorted) {
+                return;
+            }
+            Asset[] byDate = lots.toArray(new Asset[0]);
+            Arrays.sort(byDate, BY_PURCHASE_DATE);
+            lots.clear();
+            lots.addAll(Arrays.asList(byDate));
+            sorted = true;
+        }
+    }
+
+    /**
+     * One sale: the quantity sold, its proceeds and cost, and the lots it was taken from.
+     * Amounts are in {@link Money} units. Serializable for the portfolios saved when the
+     * sales were kept.
+     */
+    public static final class Sale implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final Date date = new Date();
+        private final String asset;
+        private final LotMethod method;
+        private long quantityUnits;
+        private long proceedsUnits;
+        private long costUnits;
+        private int lots;
+        /** Per lot taken from: purchase time, quantity taken, purchase price and sale price. */
+        private long[] lotDetails = new long[8];
+
+        /**
+         * @param asset  The asset name.
+         * @param method The method the lots were chosen by.
+         */
+        Sale(String asset, LotMethod method) {
+            this.asset = asset;
+            this.method = method;
+        }
+
+        /**
+         * Adds the quantity taken from one lot.
+         *
+         * @param lot           The lot.
+         * @param quantityUnits The quantity taken.
+         * @param priceUnits    The sale price.
+         * @param costUnits     The purchase cost of the quantity taken.
+         * @param proceeds      The proceeds of the quantity taken.
+         */
+        void add(Asset lot, long quantityUnits, long priceUnits, long costUnits, long proceeds) {
+            if ((lots + 1) * 4 > lotDetails.length) {
+                lotDetails = Arrays.copyOf(lotDetails, lotDetails.length * 2);
+            }
+            int i = lots * 4;
+            lotDetails[i] = purchaseTime(lot);
+            lotDetails[i + 1] = quantityUnits;
+            lotDetails[i + 2] = lot.getPurchasePriceUnits();
+            lotDetails[i + 3] = priceUnits;
+            lots++;
+            this.quantityUnits += quantityUnits;
+            this.costUnits += costUnits;
+            this.proceedsUnits += proceeds;
+        }
+
+        /**
+         * @return When the sale was made.
+         */
+        public Date getDate() {
+            return date;
+        }
+
+        /**
+         * @return The asset name.
+         */
+        public String getAsset() {
+            return asset;
+        }
+
+        /**
+         * @return The method the lots were chosen by.
+         */
+        public LotMethod getMethod() {
+            return method;
+        }
+
+        /**
+         * @return The quantity sold, in quantity units.
+         */
+        public long getQuantityUnits() {
+            return quantityUnits;
+        }
+
+        /**
+         * @return The proceeds, in value units.
+         */
+        public long getProceedsUnits() {
+            return proceedsUnits;
+        }
+
+        /**
+         * @return The purchase cost of the quantity sold, in value units.
+         */
+        public long getCostUnits() {
+            return costUnits;
+        }
+
+        /**
+         * @return Proceeds less cost, in value units; negative for a loss.
+         */
+        public long getRealizedGainUnits() {
+            return proceedsUnits - costUnits;
+        }
+
+        /**
+         * @return The number of lots the quantity was taken from.
+         */
+        public int getLotCount() {
+            return lots;
+        }
+
+        /**
+         * @param i A lot of the sale, 0 for the first one taken from.
+         * @return The lot's purchase date, or null if it had none.
+         */
+        public Date getLotPurchaseDate(int i) {
+            long t = lotDetails[i * 4];
+            return t == Long.MIN_VALUE ? null : new Date(t);
+        }
+
+        /**
+         * @param i A lot of the sale.
+         * @return The quantity taken from it, in quantity units.
+         */
+        public long getLotQuantityUnits(int i) {
+            return lotDetails[i * 4 + 1];
+        }
+
+        /**
+         * @param i A lot of the sale.
+         * @return Its purchase price, in price units.
+         */
+        public long getLotPurchasePriceUnits(int i) {
+            return lotDetails[i * 4 + 2];
+        }
+
+        /**
+         * @param i A lot of the sale.
+         * @return The price its quantity was sold at, in price units.
+         */
+        public long getLotSalePriceUnits(int i) {
+            return lotDetails[i * 4 + 3];
+        }
+
+        /**
+         * @return The sale as readable text.
+         */
+        @Override
+        public String toString() {
+            return "Sold " + Money.format(quantityUnits, Money.QUANTITY_SCALE) + " of " + asset
+                    + " from " + lots + " lot(s) (" + method + "): proceeds " + Money.format(proceedsUnits, Money.VALUE_SCALE)
+                    + ", cost " + Money.format(costUnits, Money.VALUE_SCALE)
+                    + ", realized " + Money.format(getRealizedGainUnits(), Money.VALUE_SCALE);
+        }
+    }
+}
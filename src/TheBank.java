@@ -1,36 +1,126 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Represents a simplified bank system that manages bank accounts.
+ * Accounts are indexed by owner id and by card number, so lookups do not scan the
+ * registry. An owner may link several cards.
+ * A third index orders accounts by expiry date; it follows {@link BankAccount#setExpiryDate}
+ * and lets a scheduled sweep find the cards about to expire without looking at the others.
  */
 public class TheBank implements Serializable{
-    public List<BankAccount> bankAccounts;
+    private static final long serialVersionUID = -4215915973406110940L;
+
+    /**
+     * Every registered account, read through {@link #getBankAccounts()}. Accounts are added
+     * through {@link #addBankAccount(BankAccount)} so the indexes stay in sync.
+     */
+    private List<BankAccount> bankAccounts;
+    private transient ConcurrentHashMap<String, List<BankAccount>> accountsByOwner;
+    private transient ConcurrentHashMap<String, BankAccount> accountsByCard;
+    private transient ConcurrentSkipListMap<Long, Set<BankAccount>> accountsByExpiry;
+    private transient ConcurrentLinkedQueue<BankAccount> lateExpiries;
+    private transient volatile long sweptUntil;
+    private transient ScheduledExecutorService expirySweeper;
+    private static final Metrics.Counter LOOKUPS = Metrics.counter("bank.lookups");
+    private static final Metrics.Counter MISSES = Metrics.counter("bank.lookup_misses");
+
 
-    
     /**
      * Constructs a new instance of TheBank with an empty list of bank accounts.
      */
     public TheBank() {
-        bankAccounts = new ArrayList<BankAccount>();
+        bankAccounts = Collections.synchronizedList(new ArrayList<BankAccount>());
+        accountsByOwner = new ConcurrentHashMap<String, List<BankAccount>>();
+        accountsByCard = new ConcurrentHashMap<String, BankAccount>();
+        accountsByExpiry = new ConcurrentSkipListMap<Long, Set<BankAccount>>();
+        lateExpiries = new ConcurrentLinkedQueue<BankAccount>();
+        sweptUntil = Long.MIN_VALUE;
+    }
+
+    /**
+     * Returns every registered account, in the order they were registered. The list is a
+     * read-only view that follows later registrations. Copy it before iterating while
+     * accounts may be added; the copy is taken under the registry's lock.
+     *
+     * @return The registered accounts (read-only).
+     */
+    public List<BankAccount> getBankAccounts() {
+        return Collections.unmodifiableList(bankAccounts);
     }
 
     /**
      * Searches for a bank account by the account owner's ID.
+     * If the owner has several accounts, the first one registered is returned.
      *
      * @param accountOwnerId The unique identifier of the account owner.
      * @return The BankAccount if found, otherwise null.
      */
     public BankAccount searchForUser(String accountOwnerId) {
-        for (BankAccount account : bankAccounts) {
-            if (account.getAccountOwnerId().equals(accountOwnerId)) {
-                return account;
-            }
+        List<BankAccount> accounts = accountsByOwner.get(accountOwnerId);
+        return counted(accounts == null || accounts.isEmpty() ? null : accounts.get(0));
+    }
+
+    /**
+     * Returns every bank account of an owner, in the order they were registered.
+     *
+     * @param accountOwnerId The unique identifier of the account owner.
+     * @return The owner's accounts; empty if there are none.
+     */
+    public List<BankAccount> findAccountsByOwner(String accountOwnerId) {
+        List<BankAccount> accounts = accountsByOwner.get(accountOwnerId);
+        count(accounts != null && !accounts.isEmpty());
+        return accounts == null ? Collections.<BankAccount>emptyList() : Collections.unmodifiableList(accounts);
+    }
+
+    /**
+     * Searches for a bank account by card number.
+     *
+     * @param cardNumber The card number.
+     * @return The BankAccount if found, otherwise null.
+     */
+    public BankAccount searchForCard(String cardNumber) {
+        return counted(accountsByCard.get(cardNumber));
+    }
+
+    /**
+     * Counts a lookup and, if nothing was found, a miss.
+     *
+     * @param found The account found, or null.
+     * @return The account found, or null.
+     */
+    private static BankAccount counted(BankAccount found) {
+        count(found != null);
+        return found;
+    }
+
+    /**
+     * Counts a lookup and, if nothing was found, a miss.
+     *
+     * @param found True if the lookup found an account.
+     */
+    private static void count(boolean found) {
+        LOOKUPS.inc();
+        if (!found) {
+            MISSES.inc();
         }
-        return null;
     }
 
     /**
@@ -40,10 +130,12 @@ public class TheBank implements Serializable{
      */
     public void addBankAccount(BankAccount bankAccount) {
         bankAccounts.add(bankAccount);
+        index(bankAccount);
     }
 
     /**
      * Extends the expiry date of a bank account based on the owner's ID.
+     * If the owner has several accounts, the first one registered is extended.
      *
      * @param accountOwnerId The ID of the account owner.
      * @param newExpiryDate  The new expiry date to set.
@@ -55,6 +147,133 @@ public class TheBank implements Serializable{
         }
     }
 
+    /**
+     * Extends the expiry date of the bank account with the given card number.
+     *
+     * @param cardNumber    The card number.
+     * @param newExpiryDate The new expiry date to set.
+     * @return True if the card was found.
+     */
+    public boolean extendCardExpiryDate(String cardNumber, Date newExpiryDate) {
+        BankAccount account = searchForCard(cardNumber);
+        if (account == null) {
+            return false;
+        }
+        account.setExpiryDate(newExpiryDate);
+        return true;
+    }
+
+    /**
+     * Returns the accounts whose card expires before the given date, soonest first.
+     * Only the matching accounts are visited.
+     *
+     * @param date The cut-off date (exclusive).
+     * @return The accounts expiring before the date.
+     */
+    public List<BankAccount> cardsExpiringBefore(Date date) {
+        return collect(accountsByExpiry.headMap(date.getTime(), false));
+    }
+
+    /**
+     * Returns the accounts whose card expires in the given time range, soonest first.
+     *
+     * @param from Start of the range (inclusive).
+     * @param to   End of the range (exclusive).
+     * @return The accounts expiring in the range.
+     */
+    public List<BankAccount> cardsExpiringBetween(Date from, Date to) {
+        return collect(accountsByExpiry.subMap(from.getTime(), true, to.getTime(), false));
+    }
+
+    /**
+     * Runs a sweep every period that reports the cards expiring within the next given
+     * number of days. Each run only reports cards that entered the window since the last
+     * run (including cards whose expiry date was moved into it), so its cost follows the
+     * number of cards reported. Replaces a sweep that is already scheduled.
+     *
+     * @param days   Size of the look-ahead window in days.
+     * @param period Time between sweeps.
+     * @param unit   Time unit of the period.
+     * @param report Receives the cards found by each sweep; not called when there are none.
+     */
+    public synchronized void scheduleExpirySweep(int days, long period, TimeUnit unit,
+                                                 Consumer<List<BankAccount>> report) {
+        stopExpirySweep();
+        sweptUntil = Long.MIN_VALUE;
+        expirySweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "card-expiry-sweep");
+            t.setDaemon(true);
+            return t;
+        });
+        expirySweeper.scheduleAtFixedRate(() -> {
+            List<BankAccount> expiring = sweepExpiries(System.currentTimeMillis(), days);
+            if (!expiring.isEmpty()) {
+                report.accept(expiring);
+            }
+        }, 0, period, unit);
+    }
+
+    /**
+     * Stops the scheduled expiry sweep, if any.
+     */
+    public synchronized void stopExpirySweep() {
+        if (expirySweeper != null) {
+            expirySweeper.shutdown();
+            expirySweeper = null;
+        }
+    }
+
+    /**
+     * Finds the cards that entered the look-ahead window since the previous sweep.
+     *
+     * @param nowMillis The current time in epoch milliseconds.
+     * @param days      Size of the look-ahead window in days.
+     * @return The newly expiring cards, soonest first.
+     */
+    synchronized List<BankAccount> sweepExpiries(long nowMillis, int days) {
+        long horizon = nowMillis + TimeUnit.DAYS.toMillis(days);
+        List<BankAccount> found = sweptUntil == Long.MIN_VALUE
+                ? collect(accountsByExpiry.headMap(horizon, false))
+                : collect(accountsByExpiry.subMap(sweptUntil, true, horizon, false));
+        long previous = sweptUntil;
+        sweptUntil = Math.max(sweptUntil, horizon);
+        if (!lateExpiries.isEmpty()) {
+            HashSet<BankAccount> reported = new HashSet<BankAccount>(found);
+            for (BankAccount late; (late = lateExpiries.poll()) != null; ) {
+                long expiry = late.getExpiryDate().getTime();
+                if (expiry < previous && reported.add(late)) {
+                    found.add(late);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Moves an account in the expiry index after its expiry date changed.
+     * Called by {@link BankAccount#setExpiryDate}.
+     *
+     * @param account The account.
+     * @param old     The previous expiry date.
+     */
+    void expiryChanged(BankAccount account, Date old) {
+        synchronized (accountsByExpiry) {
+            if (old != null) {
+                Set<BankAccount> accounts = accountsByExpiry.get(old.getTime());
+                if (accounts != null) {
+                    accounts.remove(account);
+                    if (accounts.isEmpty()) {
+                        accountsByExpiry.remove(old.getTime());
+                    }
+                }
+            }
+            indexExpiry(account);
+        }
+        if (account.getExpiryDate() != null && account.getExpiryDate().getTime() < sweptUntil) {
+            lateExpiries.add(account);
+        }
+    }
+
     /**
      * Generates a 6-digit One-Time Password (OTP).
      *
@@ -65,4 +284,66 @@ public class TheBank implements Serializable{
             // b.setOTP(otp);
             return otp;
     }
+
+    /**
+     * Adds an account to the owner and card indexes.
+     *
+     * @param bankAccount The account to index.
+     */
+    private void index(BankAccount bankAccount) {
+        accountsByOwner.computeIfAbsent(bankAccount.getAccountOwnerId(), k -> new CopyOnWriteArrayList<BankAccount>())
+                .add(bankAccount);
+        accountsByCard.put(bankAccount.getCardNumber(), bankAccount);
+        synchronized (accountsByExpiry) {
+            indexExpiry(bankAccount);
+        }
+        bankAccount.setRegistry(this);
+    }
+
+    /**
+     * Adds an account to the expiry index. The caller holds the index's lock.
+     *
+     * @param account The account.
+     */
+    private void indexExpiry(BankAccount account) {
+        if (account.getExpiryDate() != null) {
+            accountsByExpiry.computeIfAbsent(account.getExpiryDate().getTime(),
+                    k -> ConcurrentHashMap.<BankAccount>newKeySet()).add(account);
+        }
+    }
+
+    /**
+     * Flattens a range of the expiry index into a list.
+     *
+     * @param range Part of the expiry index.
+     * @return The accounts in the range, soonest first.
+     */
+    private static List<BankAccount> collect(Map<Long, Set<BankAccount>> range) {
+        ArrayList<BankAccount> result = new ArrayList<BankAccount>();
+        for (Set<BankAccount> accounts : range.values()) {
+            result.addAll(accounts);
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilds the indexes, which are not part of the serialized form.
+     *
+     * @param in The stream to read from.
+     * @throws IOException            if the stream cannot be read.
+     * @throws ClassNotFoundException if a class of the stream is unknown.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        accountsByOwner = new ConcurrentHashMap<String, List<BankAccount>>();
+        accountsByCard = new ConcurrentHashMap<String, BankAccount>();
+        accountsByExpiry = new ConcurrentSkipListMap<Long, Set<BankAccount>>();
+        lateExpiries = new ConcurrentLinkedQueue<BankAccount>();
+        sweptUntil = Long.MIN_VALUE;
+        synchronized (bankAccounts) {
+            for (BankAccount b : bankAccounts) {
+                index(b);
+            }
+        }
+    }
 }
@@ -1,3 +1,5 @@
+import java.util.function.Predicate;
+
 /**
  * Interface for validation methods related to user input such as email, name,
  * password, numeric checks, and date formatting.
@@ -42,4 +44,33 @@ public interface Validation {
      * @return true if it matches the format, false otherwise.
      */
     boolean checkDate(String date); // Format: yyyy-MM-dd
+
+    /**
+     * Validates that a card number is exactly 16 digits.
+     *
+     * @param cardNumber The card number to validate, without spaces.
+     * @return true if valid, false otherwise.
+     */
+    boolean checkCardNumber(String cardNumber);
+
+    /**
+     * Applies one check to a whole column of inputs, e.g. all card numbers of a bulk import.
+     *
+     * @param inputs  The values to check.
+     * @param count   How many values of the array to check, starting at 0.
+     * @param check   The check to apply, e.g. {@code validator::checkDate}.
+     * @param results Set to true at each index whose value passed; at least count long.
+     * @return The number of values that failed.
+     */
+    default int checkColumn(String[] inputs, int count, Predicate<String> check, boolean[] results) {
+        int failed = 0;
+        for (int i = 0; i < count; i++) {
+            boolean ok = check.test(inputs[i]);
+            results[i] = ok;
+            if (!ok) {
+                failed++;
+            }
+        }
+        return failed;
+    }
 }
\ No newline at end of file
@@ -4,8 +4,25 @@ import java.util.regex.Pattern;
 /**
  * Implementation of the Validation interface providing
  * input validation methods for email, name, password, numbers, and dates.
+ * The regular expressions are compiled once; the numeric, date and card number checks
+ * are plain character scans that allocate nothing.
+ * Every check is counted in the metrics, and so is every rejected value, by kind.
  */
 public class ValidationImpl implements Validation, Serializable {
+    private static final long serialVersionUID = 5141791183293783002L;
+
+    private static final Pattern EMAIL = Pattern.compile("^[\\w.-]+@[\\w.-]+\\.[a-zA-Z]{2,}$");
+    private static final Pattern NAME = Pattern.compile("^[A-Za-z\\s]+$");
+    // Minimum 8 characters, at least one uppercase letter, one lowercase letter, one number
+    private static final Pattern PASSWORD = Pattern.compile("^(?=.*[a-z])(?=.*[A-Z])(?=.*\\d).{8,}$");
+    private static final int CARD_NUMBER_LENGTH = 16;
+    private static final Metrics.Counter CHECKS = Metrics.counter("validation.checks");
+    private static final Metrics.Counter BAD_EMAIL = Metrics.counter("validation.rejected.email");
+    private static final Metrics.Counter BAD_NAME = Metrics.counter("validation.rejected.name");
+    private static final Metrics.Counter BAD_PASSWORD = Metrics.counter("validation.rejected.password");
+    private static final Metrics.Counter BAD_NUMBER = Metrics.counter("validation.rejected.numeric");
+    private static final Metrics.Counter BAD_DATE = Metrics.counter("validation.rejected.date");
+    private static final Metrics.Counter BAD_CARD = Metrics.counter("validation.rejected.card_number");
 
     /**
      * Validates if the provided email string matches standard email format.
@@ -15,8 +32,7 @@ public class ValidationImpl implements Validation, Serializable {
      */
     @Override
     public boolean checkEmail(String email) {
-        String regex = "^[\\w.-]+@[\\w.-]+\\.[a-zA-Z]{2,}$";
-        return Pattern.matches(regex, email);
+        return counted(email != null && EMAIL.matcher(email).matches(), BAD_EMAIL);
     }
 
     /**
@@ -27,8 +43,7 @@ public class ValidationImpl implements Validation, Serializable {
      */
     @Override
     public boolean checkName(String name) {
-        String regex = "^[A-Za-z\\s]+$";
-        return Pattern.matches(regex, name);
+        return counted(name != null && NAME.matcher(name).matches(), BAD_NAME);
     }
 
     /**
@@ -40,9 +55,7 @@ public class ValidationImpl implements Validation, Serializable {
      */
     @Override
     public boolean checkPassword(String password) {
-        // Minimum 8 characters, at least one uppercase letter, one lowercase letter, one number
-        String regex = "^(?=.*[a-z])(?=.*[A-Z])(?=.*\\d).{8,}$";
-        return Pattern.matches(regex, password);
+        return counted(password != null && PASSWORD.matcher(password).matches(), BAD_PASSWORD);
     }
 
     /**
@@ -53,8 +66,7 @@ public class ValidationImpl implements Validation, Serializable {
      */
     @Override
     public boolean checkIfNumeric(String input) {
-        String regex = "\\d+";
-        return Pattern.matches(regex, input);
+        return counted(isNumeric(input), BAD_NUMBER);
     }
 
     /**
@@ -65,8 +77,73 @@ public class ValidationImpl implements Validation, Serializable {
      */
     @Override
     public boolean checkDate(String date) {
-        // yyyy-MM-dd format
-        String regex = "^\\d{4}-\\d{2}-\\d{2}$";
-        return Pattern.matches(regex, date);
+        return counted(isDate(date), BAD_DATE);
+    }
+
+    /**
+     * Checks that a card number is exactly 16 digits.
+     *
+     * @param cardNumber The card number, without spaces.
+     * @return true if the card number is valid, false otherwise.
+     */
+    @Override
+    public boolean checkCardNumber(String cardNumber) {
+        return counted(cardNumber != null && cardNumber.length() == CARD_NUMBER_LENGTH && isNumeric(cardNumber), BAD_CARD);
+    }
+
+    /**
+     * @param input The string to check.
+     * @return true if the string is not empty and all digits.
+     */
+    private static boolean isNumeric(String input) {
+        if (input == null || input.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < input.length(); i++) {
+            if (!isDigit(input.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param date The string to check.
+     * @return true if the string has the format yyyy-MM-dd.
+     */
+    private static boolean isDate(String date) {
+        if (date == null || date.length() != 10) {
+            return false;
+        }
+        for (int i = 0; i < 10; i++) {
+            char c = date.charAt(i);
+            if (i == 4 || i == 7 ? c != '-' : !isDigit(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts a check and, if it failed, a rejection of its kind.
+     *
+     * @param valid    The result of the check.
+     * @param rejected The counter of rejections of this kind.
+     * @return The result of the check.
+     */
+    private static boolean counted(boolean valid, Metrics.Counter rejected) {
+        CHECKS.inc();
+        if (!valid) {
+            rejected.inc();
+        }
+        return valid;
+    }
+
+    /**
+     * @param c A character.
+     * @return true if it is an ASCII digit, like \d in the patterns.
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 }
@@ -0,0 +1,32 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for one valuation pass over the holdings of one or many portfolios.
+ * Every portfolio read from disk is valued once, so by default only passes of at least
+ * 1 ms are recorded; a recording's settings can lower the threshold.
+ */
+@Name("personalinvestment.Valuation")
+@Label("Valuation")
+@Category({"Personal Investment", "Portfolio"})
+@Threshold("1 ms")
+@Description("A pass that values holdings: a portfolio recompute, a firm-wide aggregation or a zakat run")
+final class ValuationEvent extends jdk.jfr.Event {
+    @Label("Kind")
+    @Description("recompute, verify, firm or zakat")
+    String kind;
+
+    @Label("Portfolios")
+    int portfolios;
+
+    @Label("Assets")
+    @Description("Number of assets valued; for a zakat run, the lots held a full hawl")
+    long assets;
+
+    @Label("Value")
+    @Description("The value at purchase prices; for a zakat run, the zakat due")
+    double value;
+}
@@ -0,0 +1,531 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * End-of-day portfolio values per investor, for charts and statements.
+ *
+ * Each investor's history is one byte array of points, a point being the day and the value
+ * in {@link Money} value units. Both are stored as the difference to the previous point:
+ * the value change zigzag-encoded, shifted left by one bit whose set value says a day gap
+ * other than 1 follows, written as a varint; then that gap, if any, as a varint. Small moves
+ * either way take few bytes, an unchanged value one, and consecutive days cost nothing
+ * extra: a point takes 1 to 5 bytes for values up to millions, against 12 for an int and a
+ * long. Value changes must stay within +/-2^62 units.
+ *
+ * Every {@value #SKIP_INTERVAL} points the day, value and byte position are also kept in a
+ * small skip index, so a range query starts decoding at most {@value #SKIP_INTERVAL} points
+ * before its first day instead of at the start of the history. Ranges can be read daily, or
+ * downsampled to the last value of each week (Monday to Sunday) or month.
+ *
+ * Points are added in day order; recording a day again replaces that day's value, so an
+ * end-of-day run can be repeated. The history is saved to and read from one file; the skip
+ * index is rebuilt on reading.
+ */
+public class ValueHistory {
+    /** Points between two entries of the skip index. */
+    static final int SKIP_INTERVAL = 64;
+
+    private static final int MAGIC = 0x50495648; // "PIVH"
+    private static final short VERSION = 1;
+    private static final Metrics.Histogram RANGE_TIME = Metrics.histogram("history.range");
+
+    /**
+     * How finely a range is returned.
+     */
+    public enum Resolution {
+        /** Every recorded day. */
+        DAILY,
+        /** The last recorded day of each week, Monday to Sunday. */
+        WEEKLY,
+        /** The last recorded day of each month. */
+        MONTHLY
+    }
+
+    private final HashMap<String, Series> series = new HashMap<String, Series>();
+    private long points;
+
+    /**
+     * Records or shows end-of-day values, using ValueHistory.dat in the working directory.
+     * Usage: {@code java ValueHistory record [yyyy-MM-dd]} to add every investor's value for
+     * a day (default today), or
+     * {@code java ValueHistory show <user name> <from yyyy-MM-dd> <to yyyy-MM-dd> [daily|weekly|monthly]}.
+     *
+     * @param args The command and its arguments.
+     * @throws Exception if the investors or the history cannot be read or written.
+     */
+    public static void main(String[] args) throws Exception {
+        File file = new File("ValueHistory.dat");
+        if (args.length >= 1 && args[0].equals("record") && args.length <= 2) {
+            LocalDate day = args.length > 1 ? LocalDate.parse(args[1]) : LocalDate.now();
+            ValueHistory history = load(file);
+            file_manager fm = new file_manager();
+            fm.get_all_investors();
+            long start = System.nanoTime();
+            history.recordAll(fm.all_investors, day);
+            history.save(file);
+            System.out.printf("Recorded %d investors for %s in %.1f ms; %d points in %d bytes%n",
+                    fm.all_investors.size(), day, (System.nanoTime() - start) / 1e6, history.pointCount(), history.bytesUsed());
+        } else if (args.length >= 4 && args[0].equals("show") && args.length <= 5) {
+            Resolution resolution = args.length > 4 ? Resolution.valueOf(args[4].toUpperCase(Locale.ROOT)) : Resolution.DAILY;
+            ValueHistory history = load(file);
+            file_manager fm = new file_manager();
+            fm.get_all_investors();
+            for (Investor i : fm.all_investors) {
+                if (i.get_user_name().equalsIgnoreCase(args[1])) {
+                    Points p = history.range(i.get_id(), LocalDate.parse(args[2]), LocalDate.parse(args[3]), resolution);
+                    for (int k = 0; k < p.size(); k++) {
+                        System.out.println(p.getDay(k).format(DateTimeFormatter.ISO_LOCAL_DATE) + "\t"
+                                + Money.format(p.getValueUnits(k), Money.VALUE_SCALE));
+                    }
+                    return;
+                }
+            }
+            System.err.println("No investor " + args[1]);
+            System.exit(1);
+        } else {
+            System.err.println("Usage: java ValueHistory record [yyyy-MM-dd]");
+            System.err.println("       java ValueHistory show <user name> <from> <to> [daily|weekly|monthly]");
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Records one investor's value for a day.
+     *
+     * @param investorId The investor's id.
+     * @param day        The day; not before the last day recorded for the investor.
+     * @param valueUnits The value in {@link Money} value units.
+     * @throws IllegalArgumentException if the day is before the last one recorded.
+     */
+    public synchronized void record(String investorId, LocalDate day, long valueUnits) {
+        Series s = series.computeIfAbsent(investorId, k -> new Series());
+        int before = s.count;
+        s.append(Math.toIntExact(day.toEpochDay()), valueUnits);
+        points += s.count - before;
+    }
+
+    /**
+     * Records the value of every investor for a day: the market value of the portfolio,
+     * which is the purchase value of the holdings without a market price.
+     *
+     * @param investors The investors; a synchronized list is copied under its lock first.
+     * @param day       The day; not before the last day recorded for any of them.
+     * @throws IllegalArgumentException if the day is before the last one recorded for an
+     *                                  investor; nothing is recorded then.
+     */
+    public void recordAll(List<Investor> investors, LocalDate day) {
+        Investor[] snapshot;
+        synchronized (investors) {
+            snapshot = investors.toArray(new Investor[0]);
+        }
+        int epochDay = Math.toIntExact(day.toEpochDay());
+        long[] values = new long[snapshot.length];
+        for (int i = 0; i < snapshot.length; i++) {
+            values[i] = snapshot[i].userPortfolio.getMarketValueUnits();
+        }
+        synchronized (this) {
+            // check every investor first so a day out of order records nobody
+            for (Investor investor : snapshot) {
+                Series s = series.get(investor.get_id());
+                if (s != null && s.count > 0 && epochDay < s.lastDay) {
+                    throw new IllegalArgumentException("day " + day + " is before the last recorded day "
+                            + LocalDate.ofEpochDay(s.lastDay) + " of investor " + investor.get_id());
+                }
+            }
+            for (int i = 0; i < snapshot.length; i++) {
+                Series s = series.computeIfAbsent(snapshot[i].get_id(), k -> new Series());
+                int before = s.count;
+                s.append(epochDay, values[i]);
+                points += s.count - before;
+            }
+        }
+    }
+
+    /**
+     * Reads the values of an investor between two days, both included.
+     *
+     * @param investorId The investor's id.
+     * @param from       The first day.
+     * @param to         The last day.
+     * @param resolution Every day, or the last day of each week or month.
+     * @return The points, oldest first; empty if none is in the range.
+     */
+    public synchronized Points range(String investorId, LocalDate from, LocalDate to, Resolution resolution) {
+        long start = System.nanoTime();
+        Points result = new Points();
+        Series s = series.get(investorId);
+        int first = Math.toIntExact(from.toEpochDay()), last = Math.toIntExact(to.toEpochDay());
+        if (s != null && s.count > 0 && first <= last && first <= s.lastDay) {
+            // start at the last skip entry on or before the first day
+            int k = Math.max(0, upperBound(s.skipDays, (s.count - 1) / SKIP_INTERVAL + 1, first) - 1);
+            int day = s.skipDays[k];
+            long value = s.skipValues[k];
+            int position = s.skipOffsets[k];
+            int index = k * SKIP_INTERVAL;
+            long bucket = Long.MIN_VALUE;
+            byte[] data = s.data;
+            int[] cursor = new int[1];
+            while (day <= last) {
+                if (day >= first) {
+                    long key = bucketOf(day, resolution);
+                    if (key == bucket) {
+                        result.replaceLast(day, value);
+                    } else {
+                        result.add(day, value);
+                        bucket = key;
+                    }
+                }
+                if (++index == s.count) {
+                    break;
+                }
+                cursor[0] = position;
+                long head = readVarint(data, cursor);
+                day += (head & 1) == 0 ? 1 : (int) readVarint(data, cursor);
+                value += unzigzag(head >>> 1);
+                position = cursor[0];
+            }
+        }
+        RANGE_TIME.recordSince(start);
+        return result;
+    }
+
+    /**
+     * @return The number of investors with a history.
+     */
+    public synchronized int investorCount() {
+        return series.size();
+    }
+
+    /**
+     * @return The number of points over all investors.
+     */
+    public synchronized long pointCount() {
+        return points;
+    }
+
+    /**
+     * @return The bytes held by the encoded points and the skip index, not counting the
+     *         per-investor map entries.
+     */
+    public synchronized long bytesUsed() {
+        long bytes = 0;
+        for (Series s : series.values()) {
+            bytes += s.data.length + s.skipDays.length * (4L + 8 + 4);
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the history to a file, replacing it atomically.
+     *
+     * @param file The file.
+     * @throws IOException if the file cannot be written.
+     */
+    public synchronized void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(series.size());
+            for (java.util.Map.Entry<String, Series> e : series.entrySet()) {
+                Series s = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeInt(s.count);
+                out.writeInt(s.length);
+                out.write(s.data, 0, s.length);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads a history written by {@link #save}.
+     *
+     * @param file The file.
+     * @return The history; empty if the file does not exist.
+     * @throws IOException if the file cannot be read or is not a value history.
+     */
+    public static ValueHistory load(File file) throws IOException {
+        ValueHistory history = new ValueHistory();
+        if (!file.exists()) {
+            return history;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a value history: " + file);
+            }
+            if (in.readShort() != VERSION) {
+                throw new IOException("Unsupported value history version in " + file);
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                String id = in.readUTF();
+                int count = in.readInt();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                history.series.put(id, Series.decode(data, count));
+                history.points += count;
+            }
+        }
+        return history;
+    }
+
+    /**
+     * @param day        An epoch day.
+     * @param resolution The resolution.
+     * @return A number that is the same for all days of one bucket and grows with the day.
+     */
+    private static long bucketOf(int day, Resolution resolution) {
+        switch (resolution) {
+            case WEEKLY:
+                // 1970-01-01 was a Thursday; weeks start on Monday
+                return Math.floorDiv(day + 3, 7);
+            case MONTHLY:
+                LocalDate d = LocalDate.ofEpochDay(day);
+                return d.getYear() * 12L + d.getMonthValue();
+            default:
+                return day;
+        }
+    }
+
+    /**
+     * @param sorted Sorted values.
+     * @param to     Number of values to search.
+     * @param key    A value.
+     * @return The index after the last value less than or equal to the key.
+     */
+    private static int upperBound(int[] sorted, int to, int key) {
+        int low = 0, high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param data     Encoded points.
+     * @param position Holds the position to read at; moved past the varint.
+     * @return The varint read.
+     */
+    private static long readVarint(byte[] data, int[] position) {
+        int at = position[0];
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[at++];
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                position[0] = at;
+                return v;
+            }
+        }
+    }
+
+    /**
+     * @param v A zigzag-encoded number.
+     * @return The signed number.
+     */
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * One investor's points and their skip index.
+     */
+    private static final class Series {
+        byte[] data = new byte[8];
+        int length;
+        int count;
+        int lastDay;
+        long lastValue;
+        /** The point before the last one, and where the last one starts, to replace it. */
+        int previousDay;
+        long previousValue;
+        int lastOffset;
+        /** Per SKIP_INTERVAL points: the day and value of the first one and the position after it. */
+        int[] skipDays = new int[1];
+        long[] skipValues = new long[1];
+        int[] skipOffsets = new int[1];
+
+        /**
+         * Adds a point, or replaces the last one if it is for the same day.
+         *
+         * @param day   The epoch day.
+         * @param value The value in units.
+         */
+        void append(int day, long value) {
+            if (count > 0 && day < lastDay) {
+                throw new IllegalArgumentException("day " + LocalDate.ofEpochDay(day) + " is before the last recorded day "
+                        + LocalDate.ofEpochDay(lastDay));
+            }
+            if (count > 0 && day == lastDay) {
+                length = lastOffset;
+                count--;
+                lastDay = previousDay;
+                lastValue = previousValue;
+            }
+            int gap = day - (count == 0 ? 0 : lastDay);
+            long change = value - (count == 0 ? 0 : lastValue);
+            if (change >= 1L << 62 || change < -(1L << 62)) {
+                throw new IllegalArgumentException("value change too large: " + change);
+            }
+            if (length + 20 > data.length) {
+                // grow by an eighth: a year of points fills a few chunks, with little slack
+                data = Arrays.copyOf(data, Math.max(length + 20, data.length + (data.length >> 3)));
+            }
+            lastOffset = length;
+            putVarint(((change << 1) ^ (change >> 63)) << 1 | (gap == 1 ? 0 : 1));
+            if (gap != 1) {
+                putVarint(gap);
+            }
+            if (count % SKIP_INTERVAL == 0) {
+                int k = count / SKIP_INTERVAL;
+                if (k == skipDays.length) {
+                    skipDays = Arrays.copyOf(skipDays, k * 2);
+                    skipValues = Arrays.copyOf(skipValues, k * 2);
+                    skipOffsets = Arrays.copyOf(skipOffsets, k * 2);
+                }
+                skipDays[k] = day;
+                skipValues[k] = value;
+                skipOffsets[k] = length;
+            }
+            previousDay = lastDay;
+            previousValue = lastValue;
+            lastDay = day;
+            lastValue = value;
+            count++;
+        }
+
+        /**
+         * @param v A non-negative number, written 7 bits a byte, low bits first.
+         */
+        private void putVarint(long v) {
+            while ((v & ~0x7FL) != 0) {
+                data[length++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            data[length++] = (byte) v;
+        }
+
+        /**
+         * Takes over saved points, rebuilding the skip index and the last two points.
+         *
+         * @param saved The encoded points, kept as the data array.
+         * @param count The number of points.
+         * @return The series.
+         * @throws IOException if the points are cut short.
+         */
+        static Series decode(byte[] saved, int count) throws IOException {
+            Series s = new Series();
+            int skips = count == 0 ? 1 : (count - 1) / SKIP_INTERVAL + 1;
+            s.skipDays = new int[skips];
+            s.skipValues = new long[skips];
+            s.skipOffsets = new int[skips];
+            int[] cursor = new int[1];
+            int day = 0;
+            long value = 0;
+            try {
+                for (int i = 0; i < count; i++) {
+                    s.lastOffset = cursor[0];
+                    long head = readVarint(saved, cursor);
+                    s.previousDay = day;
+                    s.previousValue = value;
+                    day += (head & 1) == 0 ? 1 : (int) readVarint(saved, cursor);
+                    value += unzigzag(head >>> 1);
+                    if (i % SKIP_INTERVAL == 0) {
+                        s.skipDays[i / SKIP_INTERVAL] = day;
+                        s.skipValues[i / SKIP_INTERVAL] = value;
+                        s.skipOffsets[i / SKIP_INTERVAL] = cursor[0];
+                    }
+                }
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Value history cut short");
+            }
+            if (cursor[0] != saved.length) {
+                throw new IOException("Value history has " + (saved.length - cursor[0]) + " bytes after its points");
+            }
+            s.data = saved;
+            s.length = saved.length;
+            s.count = count;
+            s.lastDay = day;
+            s.lastValue = value;
+            return s;
+        }
+    }
+
+    /**
+     * Days and values read from a history. Values are in {@link Money} value units.
+     */
+    public static final class Points {
+        private int[] days = new int[16];
+        private long[] values = new long[16];
+        private int size;
+
+        /**
+         * @param day   An epoch day.
+         * @param value The value on that day.
+         */
+        void add(int day, long value) {
+            if (size == days.length) {
+                days = Arrays.copyOf(days, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            days[size] = day;
+            values[size] = value;
+            size++;
+        }
+
+        /**
+         * @param day   An epoch day, later in the same bucket as the last point.
+         * @param value The value on that day.
+         */
+        void replaceLast(int day, long value) {
+            days[size - 1] = day;
+            values[size - 1] = value;
+        }
+
+        /**
+         * @return The number of points.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param i A point, 0 for the oldest.
+         * @return Its day.
+         */
+        public LocalDate getDay(int i) {
+            return LocalDate.ofEpochDay(days[i]);
+        }
+
+        /**
+         * @param i A point.
+         * @return Its value in value units.
+         */
+        public long getValueUnits(int i) {
+            return values[i];
+        }
+
+        /**
+         * @param i A point.
+         * @return Its value.
+         */
+        public double getValue(int i) {
+            return Money.value(values[i]);
+        }
+    }
+}
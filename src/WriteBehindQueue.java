@@ -0,0 +1,269 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves changed investors in the background, so the thread that changed them does not
+ * wait for the disk.
+ *
+ * Callers mark an investor as changed after each action. A background thread collects
+ * the marked investors and writes them with {@link file_manager#update_investors}, one
+ * fsync for the whole group (group commit). An investor marked again before it is written
+ * is written only once. A group is written at the latest the given delay after its first
+ * change, or earlier when the queue is full or someone calls {@link #flush()}.
+ *
+ * The queue holds at most the given number of investors; marking another one blocks until
+ * the writer has taken the waiting ones (backpressure). Changes to an investor must be made
+ * while holding its monitor, which the writer takes while serializing it.
+ *
+ * If a group cannot be written, its investors are written one by one, so one bad investor
+ * does not hold back the others. An investor whose write fails with an I/O error is put
+ * back into the queue and retried up to {@value #MAX_ATTEMPTS} times; other failures, such
+ * as a stale copy or a user name that is taken, are not retried. An investor that is given
+ * up on stays changed in memory and is written again when it is marked again; the failure
+ * that made the queue give up last is thrown by the next {@link #flush()} or {@link #close()}.
+ */
+public class WriteBehindQueue {
+    static final int MAX_ATTEMPTS = 5;
+
+    private final file_manager store;
+    private final int capacity;
+    private final long max_delay_nanos;
+    private final LinkedHashMap<String, Investor> pending = new LinkedHashMap<String, Investor>();
+    private final HashMap<String, Integer> attempts = new HashMap<String, Integer>();
+    private final Thread writer;
+    private long first_change_nanos;
+    private int in_flight;
+    private int flush_requests;
+    private boolean closed;
+    private Exception last_failure;
+
+    /**
+     * Creates the queue and starts its writer thread.
+     *
+     * @param store     The store to save to.
+     * @param capacity  Most investors that may wait to be written.
+     * @param max_delay Longest time a change waits before it is written.
+     * @param unit      Time unit of the delay.
+     */
+    public WriteBehindQueue(file_manager store, int capacity, long max_delay, TimeUnit unit) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.store = store;
+        this.capacity = capacity;
+        this.max_delay_nanos = unit.toNanos(max_delay);
+        this.writer = new Thread(this::write_loop, "investor-write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Marks an investor as changed. Returns at once if the investor is already waiting;
+     * otherwise blocks while the queue is full.
+     *
+     * @param investor The changed investor.
+     * @throws InterruptedException if interrupted while waiting for room.
+     */
+    public synchronized void mark_dirty(Investor investor) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("write-behind queue is closed");
+        }
+        if (pending.containsKey(investor.get_id())) {
+            return;
+        }
+        while (pending.size() >= capacity) {
+            wait();
+        }
+        if (pending.isEmpty()) {
+            first_change_nanos = System.nanoTime();
+        }
+        pending.put(investor.get_id(), investor);
+        notifyAll();
+    }
+
+    /**
+     * Writes everything marked so far and waits until it is on disk or given up on.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws Exception the last failure since the previous flush, if investors were given
+     *                   up on.
+     */
+    public synchronized void flush() throws Exception {
+        flush_requests++;
+        notifyAll();
+        try {
+            while (!pending.isEmpty() || in_flight > 0) {
+                wait();
+            }
+        } finally {
+            flush_requests--;
+        }
+        Exception failure = last_failure;
+        last_failure = null;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes everything marked so far and stops the writer thread.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws Exception the last failure since the previous flush, if investors were given
+     *                   up on.
+     */
+    public void close() throws Exception {
+        try {
+            flush();
+        } finally {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            writer.join();
+        }
+    }
+
+    /**
+     * @return The number of investors waiting to be written.
+     */
+    public synchronized int pending_count() {
+        return pending.size();
+    }
+
+    /**
+     * Body of the writer thread: takes a group of changed investors once it is due and
+     * writes it.
+     */
+    private void write_loop() {
+        while (true) {
+            ArrayList<Investor> group;
+            try {
+                group = next_group();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (group == null) {
+                return;
+            }
+            boolean written = write(group);
+            synchronized (this) {
+                in_flight = 0;
+                notifyAll();
+            }
+            if (!written) {
+                try {
+                    // give the disk a moment before the retry
+                    Thread.sleep(Math.max(10, TimeUnit.NANOSECONDS.toMillis(max_delay_nanos)));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until a group is due: the oldest change has waited the maximum delay, the queue
+     * is full, or a flush was requested. The taken investors free their room in the queue
+     * right away.
+     *
+     * @return The investors to write, or null once the queue is closed and empty.
+     * @throws InterruptedException if the writer thread is interrupted.
+     */
+    private synchronized ArrayList<Investor> next_group() throws InterruptedException {
+        while (pending.isEmpty()) {
+            if (closed) {
+                return null;
+            }
+            wait();
+        }
+        while (pending.size() < capacity && flush_requests == 0 && !closed) {
+            long left = max_delay_nanos - (System.nanoTime() - first_change_nanos);
+            if (left <= 0) {
+                break;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        ArrayList<Investor> group = new ArrayList<Investor>(pending.values());
+        pending.clear();
+        in_flight = group.size();
+        notifyAll();
+        return group;
+    }
+
+    /**
+     * Writes a group with one fsync. If that fails, the investors are written one by one,
+     * so only the ones that fail again are retried or given up on.
+     *
+     * @param group The investors to write.
+     * @return False if some investors have to be retried.
+     */
+    private boolean write(ArrayList<Investor> group) {
+        try {
+            store.update_investors(group);
+            written(group);
+            return true;
+        } catch (Exception e) {
+            if (group.size() == 1) {
+                return failed(group.get(0), e);
+            }
+        }
+        boolean written = true;
+        for (Investor i : group) {
+            List<Investor> one = Collections.singletonList(i);
+            try {
+                store.update_investors(one);
+                written(one);
+            } catch (Exception e) {
+                written &= failed(i, e);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Forgets the failed attempts of investors that have been written.
+     *
+     * @param group The investors.
+     */
+    private synchronized void written(List<Investor> group) {
+        if (attempts.isEmpty()) {
+            return;
+        }
+        for (Investor i : group) {
+            attempts.remove(i.get_id());
+        }
+    }
+
+    /**
+     * Puts an investor that could not be written back into the queue, ahead of the room
+     * limit so the writer never blocks on itself, or gives up on it if the failure is not
+     * an I/O error or it has been tried {@value #MAX_ATTEMPTS} times.
+     *
+     * @param investor The investor.
+     * @param cause    Why it could not be written.
+     * @return True if it was given up on, false if it will be retried.
+     */
+    private synchronized boolean failed(Investor investor, Exception cause) {
+        String id = investor.get_id();
+        int attempt = attempts.merge(id, 1, Integer::sum);
+        if (!(cause instanceof IOException) || attempt >= MAX_ATTEMPTS) {
+            attempts.remove(id);
+            last_failure = cause;
+            System.err.println("Not saved: investor " + id + ": " + cause.getMessage());
+            return true;
+        }
+        System.err.println("Saving investor " + id + " failed (attempt " + attempt + " of " + MAX_ATTEMPTS
+                + "), will retry: " + cause.getMessage());
+        if (pending.isEmpty()) {
+            first_change_nanos = System.nanoTime();
+        }
+        pending.putIfAbsent(id, investor);
+        return false;
+    }
+}
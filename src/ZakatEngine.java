@@ -0,0 +1,302 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the zakat due per investor with the holding-period (hawl) and nisab rules.
+ *
+ * A lot counts once it has been held a full lunar year ({@value #HAWL_DAYS} days) since its
+ * purchase date; only halal lots that are not sold count. If the value of the counting
+ * lots is below the nisab, nothing is due; otherwise 2.5% of it is. Values are at purchase
+ * price, as in {@link Portfolio#zakatDue()}, and summed exactly in {@link Money} units.
+ *
+ * For each portfolio the engine keeps the dates its lots become eligible, sorted, with the
+ * running sum of their values. Any as-of date is then answered with one binary search. The
+ * schedule is rebuilt only when the portfolio has changed since (see
+ * {@link Portfolio#getModCount()}), so re-runs over a mostly unchanged client base are cheap.
+ */
+public class ZakatEngine {
+    static final int HAWL_DAYS = 354;
+    static final long RATE_NUMERATOR = 25;
+    static final long RATE_DENOMINATOR = 1000;
+    private static final long HAWL_MILLIS = TimeUnit.DAYS.toMillis(HAWL_DAYS);
+    private static final Metrics.Histogram COMPUTE_TIME = Metrics.histogram("zakat.compute");
+    private static final Metrics.Counter REBUILDS = Metrics.counter("zakat.schedule_rebuilds");
+
+    private final long nisab;
+    private final ConcurrentHashMap<String, Schedule> schedules = new ConcurrentHashMap<String, Schedule>();
+
+    /**
+     * Creates an engine.
+     *
+     * @param nisab The least eligible value on which zakat is due, in the same currency as
+     *              the asset prices.
+     */
+    public ZakatEngine(double nisab) {
+        if (!(nisab >= 0)) {
+            throw new IllegalArgumentException("nisab must not be negative: " + nisab);
+        }
+        this.nisab = Money.amountOf(nisab);
+    }
+
+    /**
+     * Computes the zakat of every investor and writes it to a CSV file.
+     * Usage: {@code java ZakatEngine <nisab> [yyyy-MM-dd] [zakat.csv]}
+     *
+     * @param args The nisab, optionally the date to compute for (default today) and the
+     *             result file (default zakat.csv).
+     * @throws Exception if the investors cannot be read or the file cannot be written.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java ZakatEngine <nisab> [yyyy-MM-dd] [zakat.csv]");
+            System.exit(2);
+        }
+        ZakatEngine engine = new ZakatEngine(Double.parseDouble(args[0]));
+        Date as_of = new Date();
+        if (args.length > 1) {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+            format.setLenient(false);
+            as_of = format.parse(args[1]);
+        }
+        File out = new File(args.length > 2 ? args[2] : "zakat.csv");
+        file_manager fm = new file_manager();
+        fm.get_all_investors();
+        long start = System.nanoTime();
+        Result[] results = engine.computeAll(fm.all_investors, as_of);
+        double millis = (System.nanoTime() - start) / 1e6;
+        engine.writeCsv(results, out);
+        long total = 0;
+        int paying = 0;
+        for (Result r : results) {
+            total += r.zakat;
+            if (r.zakat > 0) {
+                paying++;
+            }
+        }
+        System.out.printf("%d investors, %d above nisab, zakat due %s (computed in %.1f ms), written to %s%n",
+                results.length, paying, Money.format(total, Money.VALUE_SCALE), millis, out);
+    }
+
+    /**
+     * Computes one investor's zakat.
+     *
+     * @param investor The investor.
+     * @param as_of    The date the zakat is computed for.
+     * @return The result.
+     */
+    public Result compute(Investor investor, Date as_of) {
+        long start = System.nanoTime();
+        Schedule s = schedule(investor);
+        long when = as_of.getTime();
+        // number of lots eligible on or before the date
+        int n = upperBound(s.eligibleFrom, when);
+        long eligible = n == 0 ? 0 : s.cumulativeValue[n - 1];
+        long zakat = eligible >= nisab && eligible > 0 ? Money.share(eligible, RATE_NUMERATOR, RATE_DENOMINATOR) : 0;
+        COMPUTE_TIME.recordSince(start);
+        return new Result(investor.get_id(), investor.get_user_name(), n, eligible, zakat);
+    }
+
+    /**
+     * Computes the zakat of many investors in parallel.
+     *
+     * @param investors The investors; a synchronized list is copied under its lock first.
+     * @param as_of     The date the zakat is computed for.
+     * @return One result per investor, in the order of the list.
+     */
+    public Result[] computeAll(List<Investor> investors, Date as_of) {
+        Investor[] snapshot;
+        synchronized (investors) {
+            snapshot = investors.toArray(new Investor[0]);
+        }
+        ValuationEvent event = new ValuationEvent();
+        event.begin();
+        Result[] results = Arrays.stream(snapshot).parallel().map(i -> compute(i, as_of)).toArray(Result[]::new);
+        if (event.shouldCommit()) {
+            long lots = 0, zakat = 0;
+            for (Result r : results) {
+                lots += r.eligibleLots;
+                zakat += r.zakat;
+            }
+            event.kind = "zakat";
+            event.portfolios = results.length;
+            event.assets = lots;
+            event.value = Money.value(zakat);
+            event.commit();
+        }
+        return results;
+    }
+
+    /**
+     * Writes results as CSV: investor id, user name, eligible lots, eligible value, zakat due.
+     *
+     * @param results The results.
+     * @param file    The file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void writeCsv(Result[] results, File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16))) {
+            out.println("investor_id,user_name,eligible_lots,eligible_value,zakat_due");
+            for (Result r : results) {
+                out.println(r.getInvestorId() + ",\"" + r.getUserName().replace("\"", "\"\"") + "\","
+                        + r.getEligibleLots() + "," + Money.format(r.eligibleValue, Money.VALUE_SCALE)
+                        + "," + Money.format(r.zakat, Money.VALUE_SCALE));
+            }
+        }
+    }
+
+    /**
+     * Returns the investor's eligibility schedule, rebuilding it if the portfolio changed.
+     *
+     * @param investor The investor.
+     * @return The current schedule.
+     */
+    private Schedule schedule(Investor investor) {
+        Portfolio p = investor.userPortfolio;
+        synchronized (p) {
+            Schedule cached = schedules.get(investor.get_id());
+            if (cached != null && cached.portfolio == p && cached.modCount == p.getModCount()) {
+                return cached;
+            }
+            REBUILDS.inc();
+            Schedule fresh = new Schedule(p);
+            schedules.put(investor.get_id(), fresh);
+            return fresh;
+        }
+    }
+
+    /**
+     * @param sorted A sorted array.
+     * @param key    A value.
+     * @return The number of elements less than or equal to the key.
+     */
+    private static int upperBound(long[] sorted, long key) {
+        int low = 0, high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The dates a portfolio's counting lots become eligible, sorted, and the running sum of
+     * their values in the same order. Built while holding the portfolio's monitor.
+     */
+    private static final class Schedule {
+        final Portfolio portfolio;
+        final int modCount;
+        final long[] eligibleFrom;
+        final long[] cumulativeValue;
+
+        /**
+         * @param p The portfolio.
+         */
+        Schedule(Portfolio p) {
+            this.portfolio = p;
+            this.modCount = p.getModCount();
+            int count = p.getAssetCount();
+            long[] dates = new long[count];
+            long[] values = new long[count];
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                Asset a = p.get_asset(i);
+                if (!a.IsItHalal() || a.getAssetState() == state.sold || a.getPurchaseDate() == null) {
+                    continue;
+                }
+                dates[n] = a.getPurchaseDate().getTime() + HAWL_MILLIS;
+                values[n] = a.getValueUnits();
+                n++;
+            }
+            // sort the lots by date, keeping each value with its date
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (x, y) -> Long.compare(dates[x], dates[y]));
+            this.eligibleFrom = new long[n];
+            this.cumulativeValue = new long[n];
+            long sum = 0;
+            for (int i = 0; i < n; i++) {
+                eligibleFrom[i] = dates[order[i]];
+                sum += values[order[i]];
+                cumulativeValue[i] = sum;
+            }
+        }
+    }
+
+    /**
+     * One investor's zakat.
+     */
+    public static final class Result {
+        private final String investorId;
+        private final String userName;
+        private final int eligibleLots;
+        private final long eligibleValue;
+        private final long zakat;
+
+        /**
+         * @param investorId    The investor's id.
+         * @param userName      The investor's user name.
+         * @param eligibleLots  Number of lots held a full hawl.
+         * @param eligibleValue Their value in {@link Money} value units.
+         * @param zakat         The zakat due in value units, 0 below the nisab.
+         */
+        Result(String investorId, String userName, int eligibleLots, long eligibleValue, long zakat) {
+            this.investorId = investorId;
+            this.userName = userName;
+            this.eligibleLots = eligibleLots;
+            this.eligibleValue = eligibleValue;
+            this.zakat = zakat;
+        }
+
+        /**
+         * @return The investor's id.
+         */
+        public String getInvestorId() {
+            return investorId;
+        }
+
+        /**
+         * @return The investor's user name.
+         */
+        public String getUserName() {
+            return userName;
+        }
+
+        /**
+         * @return Number of lots held a full hawl.
+         */
+        public int getEligibleLots() {
+            return eligibleLots;
+        }
+
+        /**
+         * @return Value of the lots held a full hawl.
+         */
+        public double getEligibleValue() {
+            return Money.value(eligibleValue);
+        }
+
+        /**
+         * @return The zakat due.
+         */
+        public double getZakat() {
+            return Money.value(zakat);
+        }
+    }
+}
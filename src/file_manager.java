@@ -1,67 +1,746 @@
 import java.io.*;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Manages file operations related to storing and retrieving Investor objects.
+ * The investor file holds a snapshot of all investors; later additions and updates
+ * are appended to a log and replayed on top of it when investors are read.
+ * A compaction folds the log into a new snapshot so replay stays short.
+ *
+ * At startup only a small header per investor (id, user name, email, password and the
+ * location of the full record) is read. The full investor with its portfolio is read
+ * when it is needed, e.g. at login. An index by user name and email over the headers
+ * is kept in sync with every add and update.
+ *
+ * The store may be used from many threads. Adds and updates lock only the investors they
+ * write, through a fixed set of locks picked by user name (lock striping); reads take no
+ * investor lock. Every save raises the investor's version, and a save from a copy whose
+ * version is no longer the stored one fails with {@link StaleInvestorException} instead
+ * of overwriting the newer data.
+ *
+ * Every read and write is timed in {@link Metrics} and reported to Flight Recorder as a
+ * {@link PersistenceEvent}.
+ *
+ * Saving an investor also appends the changes journaled by its portfolio to the ledger
+ * ({@link PortfolioLedger}), which answers statements as of a past date.
  */
 class file_manager{
-    public ArrayList<Investor> all_investors;
+    public volatile List<Investor> all_investors;
     private static final String INVESTOR_FILE = "Investors.txt";
+    private static final String INVESTOR_LOG = "Investors.log";
+    private static final String LEDGER_FILE = "Ledger.log";
+    private static final int SNAPSHOT_MAGIC = 0x50494E53; // "PINS"
+    private static final short SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER_SIZE = 4 + 2 + 8 + 8;
+    private static final long COMPACTION_THRESHOLD = 1 << 20;
+    private static final int LOCK_STRIPES = 64;
+    private final File snapshot_file = new File(INVESTOR_FILE);
+    private final InvestorLog log;
+    private final PortfolioLedger ledger = new PortfolioLedger(new File(LEDGER_FILE));
+    private final ConcurrentHashMap<String, InvestorHeader> headers = new ConcurrentHashMap<String, InvestorHeader>();
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+    private final InvestorIndex index = new InvestorIndex();
+    private volatile boolean headers_loaded;
+    private final ReentrantReadWriteLock snapshot_lock = new ReentrantReadWriteLock();
+    private final ReentrantLock compaction_lock = new ReentrantLock();
+    private ScheduledExecutorService compactor;
+    private final ConcurrentHashMap<String, CheckedOut> checked_out = new ConcurrentHashMap<String, CheckedOut>();
+    private final ReferenceQueue<Investor> released = new ReferenceQueue<Investor>();
+    private static final Metrics.Histogram LOAD_ALL_TIME = Metrics.histogram("store.load_all");
+    private static final Metrics.Histogram READ_TIME = Metrics.histogram("store.read");
+    private static final Metrics.Histogram ADD_TIME = Metrics.histogram("store.add");
+    private static final Metrics.Histogram UPDATE_TIME = Metrics.histogram("store.update");
+    private static final Metrics.Histogram COMPACT_TIME = Metrics.histogram("store.compact");
+    private static final Metrics.Histogram LOGIN_TIME = Metrics.histogram("login");
+    private static final Metrics.Counter LOGIN_FAILED = Metrics.counter("login.failed");
+    private static final Metrics.Counter INVESTORS_WRITTEN = Metrics.counter("store.investors_written");
+    private static final Metrics.Counter STALE_UPDATES = Metrics.counter("store.stale_updates");
+    private static final Metrics.Counter LEDGER_FAILURES = Metrics.counter("ledger.write_failures");
 
     /**
      * Constructs a new FileManager with an empty list of investors.
      */
     public file_manager(){
-        this.all_investors = new ArrayList<Investor>();
+        this.all_investors = Collections.synchronizedList(new ArrayList<Investor>());
+        this.log = new InvestorLog(new File(INVESTOR_LOG));
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        Metrics.gauge("store.snapshot_bytes", snapshot_file::length);
+        Metrics.gauge("store.log_bytes", () -> new File(INVESTOR_LOG).length());
+        Metrics.gauge("store.investors", headers::size);
+        Metrics.gauge("store.checked_out", checked_out::size);
+        Metrics.gauge("ledger.bytes", () -> new File(LEDGER_FILE).length());
     }
-    
+
     /**
-     * Reads all investors from the file and loads them into the list.
+     * Reads every investor with its full portfolio into the list.
+     * Logging in does not need this; it reads only the investor that logs in.
      *
-     * @throws Exception if the file does not exist or cannot be read.
+     * @throws Exception if the files cannot be read.
      */
-    @SuppressWarnings("unchecked")
     public void get_all_investors() throws Exception{
-        File file = new File(INVESTOR_FILE);
-        ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file));
-        all_investors = (ArrayList<Investor>) ois.readObject();
-        ois.close();
+        long start = System.nanoTime();
+        PersistenceEvent event = new PersistenceEvent();
+        event.begin();
+        ensure_headers_loaded();
+        ArrayList<Investor> loaded = new ArrayList<Investor>();
+        snapshot_lock.readLock().lock();
+        try {
+            for (InvestorHeader h : header_list()) {
+                loaded.add(load(h, event));
+            }
+        } finally {
+            snapshot_lock.readLock().unlock();
+        }
+        all_investors = Collections.synchronizedList(loaded);
+        LOAD_ALL_TIME.recordSince(start);
+        event.operation = "load_all";
+        event.records = loaded.size();
+        event.commit();
+    }
+
+    /**
+     * Checks the credentials against the investor headers and reads the full investor
+     * only if they match.
+     *
+     * @param user_name_or_email The user name or email typed at login.
+     * @param password           The password typed at login.
+     * @return The logged-in investor with its portfolio, or null if the credentials do not match.
+     * @throws Exception if the investor cannot be read.
+     */
+    public Investor log_in(String user_name_or_email, String password) throws Exception {
+        long start = System.nanoTime();
+        try {
+            ensure_headers_loaded();
+            InvestorHeader h = index.find(user_name_or_email, password);
+            if (h == null) {
+                LOGIN_FAILED.inc();
+                return null;
+            }
+            return load_investor(h.get_id());
+        } finally {
+            LOGIN_TIME.recordSince(start);
+        }
+    }
+
+    /**
+     * Logs in like {@link #log_in}, but returns the one in-memory copy of the investor
+     * that is shared by every caller in this process, reading it on first use. Sessions
+     * that work on the same investor at the same time lock that instance.
+     *
+     * The shared copy is held weakly: once no session, pending save or other caller holds
+     * it any more, it may be dropped, and the next login reads the investor again. So only
+     * investors in use stay in memory with their portfolios.
+     *
+     * @param user_name_or_email The user name or email typed at login.
+     * @param password           The password typed at login.
+     * @return The shared investor, or null if the credentials do not match.
+     * @throws Exception if the investor cannot be read.
+     */
+    public Investor check_out(String user_name_or_email, String password) throws Exception {
+        long start = System.nanoTime();
+        try {
+            ensure_headers_loaded();
+            InvestorHeader h = index.find(user_name_or_email, password);
+            if (h == null) {
+                LOGIN_FAILED.inc();
+                return null;
+            }
+            drop_released();
+            CheckedOut entry = checked_out.get(h.get_id());
+            Investor shared = entry == null ? null : entry.get();
+            if (shared != null) {
+                return shared;
+            }
+            Investor loaded = load_investor(h.get_id());
+            if (loaded == null) {
+                return null;
+            }
+            while (true) {
+                entry = checked_out.get(h.get_id());
+                shared = entry == null ? null : entry.get();
+                if (shared != null) {
+                    return shared;
+                }
+                CheckedOut fresh = new CheckedOut(h.get_id(), loaded, released);
+                if (entry == null ? checked_out.putIfAbsent(h.get_id(), fresh) == null : checked_out.replace(h.get_id(), entry, fresh)) {
+                    return loaded;
+                }
+            }
+        } finally {
+            LOGIN_TIME.recordSince(start);
+        }
+    }
+
+    /**
+     * Removes the entries of shared investors that nobody holds any more.
+     */
+    private void drop_released() {
+        CheckedOut gone;
+        while ((gone = (CheckedOut) released.poll()) != null) {
+            checked_out.remove(gone.id, gone);
+        }
+    }
+
+    /**
+     * Reads one investor with its full portfolio.
+     *
+     * @param id The investor's id.
+     * @return The investor, or null if there is no investor with this id.
+     * @throws Exception if the investor cannot be read.
+     */
+    public Investor load_investor(String id) throws Exception {
+        ensure_headers_loaded();
+        long start = System.nanoTime();
+        PersistenceEvent event = new PersistenceEvent();
+        event.begin();
+        snapshot_lock.readLock().lock();
+        try {
+            InvestorHeader h = headers.get(id);
+            if (h == null) {
+                return null;
+            }
+            event.records = 1;
+            return load(h, event);
+        } finally {
+            snapshot_lock.readLock().unlock();
+            READ_TIME.recordSince(start);
+            event.operation = "read";
+            event.commit();
+        }
     }
-    
+
     /**
-     * Adds a new investor to the list and writes the updated list to the file.
+     * Checks whether a user name is already used by a stored investor, ignoring case.
+     *
+     * @param user_name The user name to check.
+     * @return True if the user name is taken.
+     * @throws Exception if the investors cannot be loaded.
+     */
+    public boolean is_user_name_taken(String user_name) throws Exception {
+        ensure_headers_loaded();
+        return index.is_user_name_taken(user_name);
+    }
+
+    /**
+     * Checks whether an email is already used by a stored investor, ignoring case.
+     *
+     * @param email The email to check.
+     * @return True if the email is taken.
+     * @throws Exception if the investors cannot be loaded.
+     */
+    public boolean is_email_taken(String email) throws Exception {
+        ensure_headers_loaded();
+        return index.is_email_taken(email);
+    }
+
+    /**
+     * @return The number of stored investors.
+     * @throws Exception if the investors cannot be loaded.
+     */
+    public int investor_count() throws Exception {
+        ensure_headers_loaded();
+        return headers.size();
+    }
+
+    /**
+     * Adds a new investor by appending one record to the change log.
      *
      * @param newInvestor The new Investor to add.
-     * @throws Exception if the file cannot be written to.
+     * @throws Exception if the log cannot be written to, or the user name is already taken.
      */
     public void add_new_investor(Investor new_Investor) throws Exception{
-        File file = new File(INVESTOR_FILE);
-        // some investors were saved before this one
-        if(file.exists()){
-            this.get_all_investors();
-        }
+        add_new_investors(Collections.singletonList(new_Investor));
         all_investors.add(new_Investor);
-        ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file));
-        oos.writeObject(all_investors);
-        oos.close();
     }
 
     /**
-     * Updates an existing investor's record in the list and writes the updated list to the file.
+     * Adds many new investors with one append and one fsync for the whole batch.
+     * Unlike {@link #add_new_investor}, the investors are not kept in the list of all
+     * investors, so importing a large book does not hold it in memory.
+     * Nothing is written if one of the user names is already taken.
+     *
+     * @param new_investors The new investors to add.
+     * @throws Exception if the log cannot be written to, or a user name is already taken.
+     */
+    public void add_new_investors(List<Investor> new_investors) throws Exception{
+        if (new_investors.isEmpty()) {
+            return;
+        }
+        ensure_headers_loaded();
+        ArrayList<String> names = new ArrayList<String>(new_investors.size());
+        for (Investor i : new_investors) {
+            names.add(i.get_user_name());
+        }
+        long start = System.nanoTime();
+        int[] held = lock_stripes(names);
+        try {
+            for (Investor i : new_investors) {
+                if (index.is_user_name_taken(i.get_user_name())) {
+                    throw new IllegalArgumentException("User name already taken: " + i.get_user_name());
+                }
+            }
+            append(InvestorLog.OP_ADD, new_investors);
+            INVESTORS_WRITTEN.add(new_investors.size());
+        } finally {
+            unlock_stripes(held);
+            ADD_TIME.recordSince(start);
+        }
+    }
+
+    /**
+     * Saves an existing investor's record by appending one record to the change log.
+     * Nothing is written if the investor is not stored.
      *
      * @param updatedInvestor The investor with updated data.
-     * @throws Exception if the file cannot be written to.
+     * @throws StaleInvestorException if the investor was saved from another copy since this one was read.
+     * @throws Exception if the log cannot be written to.
      */
     public void updateInvestor(Investor updatedInvestor) throws Exception {
-        get_all_investors();
-        for (int i = 0; i < all_investors.size(); i++) {
-            if (all_investors.get(i).get_user_name().equals(updatedInvestor.get_user_name())) {
-                all_investors.set(i, updatedInvestor);
-                break;
+        update_investors(Collections.singletonList(updatedInvestor));
+    }
+
+    /**
+     * Saves many existing investors with one append and one fsync for the whole batch.
+     * Investors that are not stored yet are skipped, as in {@link #updateInvestor}.
+     * If one of them is stale, or was renamed to a user name that is taken, none is saved.
+     *
+     * @param updated_investors The investors with updated data.
+     * @throws StaleInvestorException if an investor was saved from another copy since this one was read.
+     * @throws Exception if the log cannot be written to.
+     */
+    public void update_investors(Collection<Investor> updated_investors) throws Exception {
+        if (updated_investors.isEmpty()) {
+            return;
+        }
+        ensure_headers_loaded();
+        long start = System.nanoTime();
+        try {
+            write_updates(updated_investors);
+        } finally {
+            UPDATE_TIME.recordSince(start);
+        }
+    }
+
+    /**
+     * Does the work of {@link #update_investors}.
+     *
+     * @param updated_investors The investors with updated data.
+     * @throws StaleInvestorException if an investor was saved from another copy since this one was read.
+     * @throws Exception if the log cannot be written to.
+     */
+    private void write_updates(Collection<Investor> updated_investors) throws Exception {
+        while (true) {
+            // lock the stripes of both the stored and the new user name, so renames are covered
+            ArrayList<String> names = new ArrayList<String>(updated_investors.size() * 2);
+            for (Investor i : updated_investors) {
+                names.add(i.get_user_name());
+                InvestorHeader h = headers.get(i.get_id());
+                if (h != null) {
+                    names.add(h.get_user_name());
+                }
+            }
+            int[] held = lock_stripes(names);
+            try {
+                ArrayList<Investor> stored = new ArrayList<Investor>(updated_investors.size());
+                boolean renamed_meanwhile = false;
+                for (Investor i : updated_investors) {
+                    InvestorHeader h = headers.get(i.get_id());
+                    if (h == null) {
+                        continue;
+                    }
+                    if (Arrays.binarySearch(held, stripe_of(h.get_user_name())) < 0) {
+                        renamed_meanwhile = true;
+                        break;
+                    }
+                    if (h.get_version() != i.get_version()) {
+                        STALE_UPDATES.inc();
+                        throw new StaleInvestorException(i.get_id(), i.get_version(), h.get_version());
+                    }
+                    if (!h.get_user_name().equalsIgnoreCase(i.get_user_name())
+                            && index.is_user_name_taken(i.get_user_name())) {
+                        throw new IllegalArgumentException("User name already taken: " + i.get_user_name());
+                    }
+                    stored.add(i);
+                }
+                if (renamed_meanwhile) {
+                    continue;
+                }
+                for (Investor i : stored) {
+                    i.set_version(i.get_version() + 1);
+                }
+                try {
+                    append(InvestorLog.OP_UPDATE, stored);
+                } catch (Exception e) {
+                    for (Investor i : stored) {
+                        i.set_version(i.get_version() - 1);
+                    }
+                    throw e;
+                }
+                INVESTORS_WRITTEN.add(stored.size());
+                return;
+            } finally {
+                unlock_stripes(held);
             }
         }
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(INVESTOR_FILE))) {
-            oos.writeObject(all_investors);
+    }
+
+    /**
+     * Starts a background job that compacts the store whenever the log has grown
+     * past the threshold.
+     *
+     * @param period How often to check the log size.
+     * @param unit   Time unit of the period.
+     */
+    public synchronized void start_background_compaction(long period, TimeUnit unit){
+        if (compactor != null) {
+            return;
+        }
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "investor-compaction");
+            t.setDaemon(true);
+            return t;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                if (log.length() > COMPACTION_THRESHOLD || snapshot_is_legacy()) {
+                    compact();
+                }
+            } catch (Exception e) {
+                System.err.println("Investor compaction failed: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops the background compaction job, if it is running.
+     */
+    public synchronized void stop_background_compaction(){
+        if (compactor != null) {
+            compactor.shutdown();
+            compactor = null;
+        }
+    }
+
+    /**
+     * Writes a point-in-time image of all investors to a temporary file, swaps it in
+     * for the investor file with an atomic rename, and then starts a new log holding
+     * only the changes written since. A crash at any point leaves either the old or the
+     * new snapshot in place, each with a log that matches it.
+     * Records are copied as raw bytes. Investors from an old-format file are copied from
+     * the bytes they were serialized to when the file was read, never from an instance a
+     * caller may be changing.
+     *
+     * @throws Exception if the files cannot be read or written.
+     */
+    public void compact() throws Exception {
+        ensure_headers_loaded();
+        compaction_lock.lock();
+        long start = System.nanoTime();
+        PersistenceEvent event = new PersistenceEvent();
+        event.begin();
+        try {
+            long epoch, covered;
+            synchronized (log) {
+                epoch = log.epoch();
+                covered = log.length();
+            }
+            LinkedHashMap<String, InvestorHeader> state = read_headers(covered);
+            HashMap<String, InvestorHeader> moved = new HashMap<String, InvestorHeader>();
+
+            File tmp = new File(INVESTOR_FILE + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16));
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeShort(SNAPSHOT_VERSION);
+                out.writeLong(epoch);
+                out.writeLong(covered);
+                long position = SNAPSHOT_HEADER_SIZE;
+                for (InvestorHeader h : state.values()) {
+                    byte[] payload;
+                    if (h.get_source() == InvestorHeader.RESIDENT) {
+                        payload = h.get_resident_payload();
+                    } else {
+                        payload = InvestorLog.read_payload(file_of(h), h.get_offset(), h.get_length());
+                        event.bytesRead += payload.length;
+                    }
+                    int before = out.size();
+                    InvestorLog.write_record_prefix(out, InvestorLog.OP_ADD, h.get_id(), h.get_user_name(),
+                            h.get_email(), h.get_password(), h.get_version(), payload.length);
+                    position += out.size() - before;
+                    moved.put(h.get_id(), new InvestorHeader(h.get_id(), h.get_user_name(), h.get_email(),
+                            h.get_password(), h.get_version(), InvestorHeader.IN_SNAPSHOT, position, payload.length));
+                    out.write(payload);
+                    position += payload.length;
+                }
+                out.flush();
+                fos.getFD().sync();
+                event.records = state.size();
+                event.bytesWritten = position;
+            }
+
+            snapshot_lock.writeLock().lock();
+            try {
+                Files.move(tmp.toPath(), snapshot_file.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                long shift = log.rotate(covered);
+                for (Map.Entry<String, InvestorHeader> e : headers.entrySet()) {
+                    InvestorHeader h = e.getValue();
+                    if (h.get_source() == InvestorHeader.IN_LOG && h.get_offset() >= covered) {
+                        e.setValue(h.moved_to(InvestorHeader.IN_LOG, h.get_offset() - shift));
+                    } else {
+                        e.setValue(moved.get(e.getKey()));
+                    }
+                }
+                // the index keeps the stored order of investors that share a user name or email
+                LinkedHashMap<String, InvestorHeader> ordered = new LinkedHashMap<String, InvestorHeader>();
+                for (String id : state.keySet()) {
+                    ordered.put(id, headers.get(id));
+                }
+                for (Map.Entry<String, InvestorHeader> e : headers.entrySet()) {
+                    ordered.putIfAbsent(e.getKey(), e.getValue());
+                }
+                index.rebuild(ordered.values());
+            } finally {
+                snapshot_lock.writeLock().unlock();
+            }
+        } finally {
+            COMPACT_TIME.recordSince(start);
+            compaction_lock.unlock();
+            event.operation = "compact";
+            event.commit();
+        }
+    }
+
+    /**
+     * Reads the investor headers once, if they have not been read yet.
+     *
+     * @throws Exception if the files cannot be read.
+     */
+    private void ensure_headers_loaded() throws Exception {
+        if (headers_loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (headers_loaded) {
+                return;
+            }
+            snapshot_lock.readLock().lock();
+            try {
+                LinkedHashMap<String, InvestorHeader> state = read_headers(-1);
+                headers.clear();
+                headers.putAll(state);
+                index.rebuild(state.values());
+            } finally {
+                snapshot_lock.readLock().unlock();
+            }
+            headers_loaded = true;
+        }
+    }
+
+    /**
+     * Loads the snapshot headers and replays the log tail written after it.
+     * Investor files in the old format hold one serialized list; they are read in full and
+     * kept in memory, serialized, until the next compaction rewrites them in the current
+     * format. Every log record is newer than such a file.
+     *
+     * @param upTo Log offset to stop replaying at, or -1 for the whole log.
+     * @return The headers keyed by investor id, in insertion order.
+     * @throws Exception if the files cannot be read.
+     */
+    @SuppressWarnings("unchecked")
+    private LinkedHashMap<String, InvestorHeader> read_headers(long upTo) throws Exception {
+        LinkedHashMap<String, InvestorHeader> state = new LinkedHashMap<String, InvestorHeader>();
+        long epoch = 0, covered = 0;
+        if (snapshot_is_legacy()) {
+            try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(snapshot_file)))) {
+                for (Investor i : (ArrayList<Investor>) ois.readObject()) {
+                    state.put(i.get_id(), new InvestorHeader(i, InvestorLog.serialize(i)));
+                }
+            }
+        } else if (snapshot_file.length() > 0) {
+            try (InvestorLog.RecordReader reader = new InvestorLog.RecordReader(snapshot_file, InvestorHeader.IN_SNAPSHOT)) {
+                if (reader.in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Not an investor file: " + snapshot_file);
+                }
+                short version = reader.in.readShort();
+                if (version != SNAPSHOT_VERSION) {
+                    throw new IOException("Unsupported investor file version " + version);
+                }
+                epoch = reader.in.readLong();
+                covered = reader.in.readLong();
+                while (reader.next()) {
+                    state.put(reader.header.get_id(), reader.header);
+                }
+            }
+        }
+        log.replay(state, epoch, covered, upTo);
+        return state;
+    }
+
+    /**
+     * @return True if the investor file is in the old format of one serialized list.
+     * @throws IOException if the file cannot be read.
+     */
+    private boolean snapshot_is_legacy() throws IOException {
+        if (snapshot_file.length() < 2) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(snapshot_file))) {
+            return in.readUnsignedShort() == 0xACED;
+        }
+    }
+
+    /**
+     * @return A copy of the current headers.
+     */
+    private ArrayList<InvestorHeader> header_list() {
+        return new ArrayList<InvestorHeader>(headers.values());
+    }
+
+    /**
+     * Appends records for the given investors and points their headers at them.
+     * The caller holds the stripe locks of the investors.
+     *
+     * @param op        OP_ADD or OP_UPDATE.
+     * @param investors The investors to write.
+     * @throws IOException if the log cannot be written to.
+     */
+    private void append(byte op, List<Investor> investors) throws IOException {
+        if (investors.isEmpty()) {
+            return;
+        }
+        snapshot_lock.readLock().lock();
+        try {
+            for (InvestorHeader h : log.append_all(op, investors)) {
+                headers.put(h.get_id(), h);
+                index.put(h);
+            }
+        } finally {
+            snapshot_lock.readLock().unlock();
+        }
+        try {
+            ledger.record(investors);
+        } catch (IOException | RuntimeException e) {
+            // the investors are saved; their changes stay journaled for the next save
+            LEDGER_FAILURES.inc();
+            System.err.println("Ledger not written: " + e);
+        }
+    }
+
+    /**
+     * Rebuilds an investor's portfolio as it was at a past time, from the ledger.
+     * Changes not saved yet are not in it.
+     *
+     * @param id   The investor's id.
+     * @param when The time of the statement.
+     * @return The holdings and values at that time, or null if the history starts later.
+     * @throws IOException if the ledger cannot be read.
+     */
+    public PortfolioLedger.Statement statement_as_of(String id, Date when) throws IOException {
+        return ledger.asOf(id, when);
+    }
+
+    /**
+     * Reads an investor's past sales from the ledger. Sales not saved yet are not in it.
+     *
+     * @param id The investor's id.
+     * @return The sales, oldest first.
+     * @throws IOException if the ledger cannot be read.
+     */
+    public List<PortfolioLedger.PastSale> sales_of(String id) throws IOException {
+        return ledger.sales(id);
+    }
+
+    /**
+     * @param user_name A user name.
+     * @return The index of the lock stripe guarding investors with this user name.
+     */
+    private static int stripe_of(String user_name) {
+        String key = user_name == null ? "" : user_name.toLowerCase(Locale.ROOT);
+        return (key.hashCode() & 0x7fffffff) % LOCK_STRIPES;
+    }
+
+    /**
+     * Locks the stripes of the given user names, always in ascending order so that two
+     * callers locking overlapping sets cannot deadlock.
+     *
+     * @param user_names The user names.
+     * @return The locked stripes in ascending order, for {@link #unlock_stripes}.
+     */
+    private int[] lock_stripes(Collection<String> user_names) {
+        int[] held = user_names.stream().mapToInt(file_manager::stripe_of).distinct().sorted().toArray();
+        for (int i : held) {
+            stripes[i].lock();
+        }
+        return held;
+    }
+
+    /**
+     * @param held Stripes returned by {@link #lock_stripes}.
+     */
+    private void unlock_stripes(int[] held) {
+        for (int i = held.length - 1; i >= 0; i--) {
+            stripes[held[i]].unlock();
+        }
+    }
+
+    /**
+     * Reads the full investor a header points at.
+     * The caller holds the snapshot read lock, so the location cannot move meanwhile.
+     *
+     * @param h     The investor's header.
+     * @param event The event the bytes read and the time spent deserializing are added to.
+     * @return The investor.
+     * @throws Exception if the investor cannot be read.
+     */
+    private Investor load(InvestorHeader h, PersistenceEvent event) throws Exception {
+        byte[] payload = h.get_source() == InvestorHeader.RESIDENT
+                ? h.get_resident_payload()
+                : InvestorLog.read_payload(file_of(h), h.get_offset(), h.get_length());
+        if (!event.isEnabled()) {
+            return InvestorLog.deserialize(payload);
+        }
+        long start = System.nanoTime();
+        Investor investor = InvestorLog.deserialize(payload);
+        event.serializationTime += System.nanoTime() - start;
+        event.bytesRead += payload.length;
+        return investor;
+    }
+
+    /**
+     * @param h A header stored in a file.
+     * @return The file the header's record is in.
+     */
+    private File file_of(InvestorHeader h) {
+        return h.get_source() == InvestorHeader.IN_SNAPSHOT ? snapshot_file : log.get_file();
+    }
+
+    /**
+     * A weakly held shared investor, with its id to remove its entry once it is dropped.
+     */
+    private static final class CheckedOut extends WeakReference<Investor> {
+        final String id;
+
+        /**
+         * @param id       The investor's id.
+         * @param investor The shared investor.
+         * @param queue    Where the reference is put once the investor is dropped.
+         */
+        CheckedOut(String id, Investor investor, ReferenceQueue<Investor> queue) {
+            super(investor, queue);
+            this.id = id;
         }
     }
-}
\ No newline at end of file
+}
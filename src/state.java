@@ -0,0 +1,6 @@
+/**
+ * Enum representing the state of an asset.
+ */
+enum state{
+    New , frozen, sold, active;
+}
@@ -0,0 +1,68 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+/**
+ * Reads, compactions and sale history of a store in the old single-list format, the shipped
+ * Investors.txt.
+ */
+class FileManagerTest {
+    private file_manager store;
+
+    @BeforeEach
+    void copyShippedStore() throws Exception {
+        for (String name : new String[]{"Investors.txt", "Investors.log", "Ledger.log"}) {
+            Files.deleteIfExists(Path.of(name));
+        }
+        Files.copy(Path.of(System.getProperty("shipped.store")), Path.of("Investors.txt"), StandardCopyOption.REPLACE_EXISTING);
+        store = new file_manager();
+    }
+
+    @Test
+    void everyLoginGetsItsOwnCopyOfAnOldFormatInvestor() throws Exception {
+        assertNotSame(store.log_in("tarek", "Dd2005200"), store.log_in("tarek", "Dd2005200"));
+    }
+
+    @Test
+    void compactionWritesOldFormatInvestorsAsTheyWereSaved() throws Exception {
+        Investor unsaved = store.log_in("tarek", "Dd2005200");
+        int assets = unsaved.userPortfolio.getAssetCount();
+        unsaved.userPortfolio.addAsset(new Asset.AssetBuilder()
+                .SetName("gold")
+                .SetQuantity(1)
+                .SetPurchasePrice(1)
+                .SetAssetType("gold")
+                .SetAssetState()
+                .Build());
+        store.compact();
+        assertEquals(assets, new file_manager().log_in("tarek", "Dd2005200").userPortfolio.getAssetCount());
+    }
+
+    @Test
+    void savedSalesAreReadFromTheLedger() throws Exception {
+        Investor investor = store.log_in("tarek", "Dd2005200");
+        Portfolio p = investor.userPortfolio;
+        p.addAsset(new Asset.AssetBuilder()
+                .SetName("gold")
+                .SetQuantity(4)
+                .SetPurchasePrice(10)
+                .SetAssetType("gold")
+                .SetAssetState()
+                .Build());
+        p.sell("gold", Money.quantityOf(1), Money.priceOf(15), LotMethod.FIFO);
+        store.update_investors(List.of(investor));
+
+        List<PortfolioLedger.PastSale> sales = new file_manager().sales_of(investor.get_id());
+        assertEquals(1, sales.size());
+        assertEquals("gold", sales.get(0).getAsset());
+        assertEquals(Money.quantityOf(1), sales.get(0).getQuantityUnits());
+        assertEquals(p.getRealizedGainUnits(), sales.get(0).getRealizedGainUnits());
+    }
+}
@@ -0,0 +1,59 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Logins against the shipped Investors.txt, which has two investors with the user name
+ * "tarek" and two with the email seso63412@gmail.com.
+ */
+class InvestorIndexTest {
+    private static final String FIRST_TAREK = "39dea342-48f7-4cc6-9388-0ff3232ce689";
+    private static final String MOSTAFA = "4521d6e4-cff8-46b1-9114-5ca1eb725b4b";
+    private static final String SECOND_TAREK = "a00c7aec-b00b-4442-b8d4-128bdbeb8c12";
+
+    private file_manager store;
+
+    @BeforeEach
+    void copyShippedStore() throws Exception {
+        for (String name : new String[]{"Investors.txt", "Investors.log", "Ledger.log"}) {
+            Files.deleteIfExists(Path.of(name));
+        }
+        Files.copy(Path.of(System.getProperty("shipped.store")), Path.of("Investors.txt"), StandardCopyOption.REPLACE_EXISTING);
+        store = new file_manager();
+    }
+
+    @Test
+    void everyInvestorWithASharedUserNameLogsIn() throws Exception {
+        assertEquals(FIRST_TAREK, store.log_in("tarek", "Dd2005200").get_id());
+        assertEquals(SECOND_TAREK, store.log_in("TAREK", "mostaFa2005").get_id());
+    }
+
+    @Test
+    void everyInvestorWithASharedEmailLogsIn() throws Exception {
+        assertEquals(FIRST_TAREK, store.log_in("seso63412@gmail.com", "Dd2005200").get_id());
+        assertEquals(MOSTAFA, store.log_in("seso63412@gmail.com", "Mostafa2005").get_id());
+    }
+
+    @Test
+    void passwordOfAnotherInvestorWithTheSameKeyIsRejected() throws Exception {
+        assertNull(store.log_in("tarek", "Mostafa2005"));
+        assertNull(store.log_in("seso63412@gmail.com", "mostaFa2005"));
+        assertNull(store.check_out("tarek", "wrong"));
+    }
+
+    @Test
+    void duplicatesStillLogInAfterAnUpdateAndACompaction() throws Exception {
+        Investor first = store.check_out("tarek", "Dd2005200");
+        store.updateInvestor(first);
+        store.compact();
+        assertEquals(FIRST_TAREK, store.check_out("tarek", "Dd2005200").get_id());
+        assertEquals(SECOND_TAREK, store.check_out("tarek", "mostaFa2005").get_id());
+        assertEquals(MOSTAFA, new file_manager().log_in("seso63412@gmail.com", "Mostafa2005").get_id());
+    }
+}
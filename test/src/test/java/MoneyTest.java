@@ -0,0 +1,37 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Amounts typed as text or held as floats by older data.
+ */
+class MoneyTest {
+    @Test
+    void decimalTextIsReadExactly() {
+        long quantity = Money.parse("12345.67", Money.QUANTITY_SCALE);
+        long price = Money.parse("19.99", Money.PRICE_SCALE);
+        assertEquals(12_345_670_000L, quantity);
+        assertEquals("246789.9433", Money.format(Money.valueOf(quantity, price), Money.VALUE_SCALE));
+    }
+
+    @Test
+    void extraPlacesAreRoundedHalfAwayFromZero() {
+        assertEquals(1, Money.parse("0.00005", Money.PRICE_SCALE));
+        assertEquals(-1, Money.parse("-0.00005", Money.PRICE_SCALE));
+        assertEquals(10_000_000, Money.parse("1e3", Money.PRICE_SCALE));
+    }
+
+    @Test
+    void floatsGoThroughTheirDecimalForm() {
+        assertEquals(12_345_670_000L, Money.quantityOf(12345.67f));
+        assertEquals(199_900, Money.priceOf(19.99f));
+    }
+
+    @Test
+    void badTextIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> Money.parse("abc", Money.PRICE_SCALE));
+        assertThrows(IllegalArgumentException.class, () -> Money.parse("1e30", Money.PRICE_SCALE));
+        assertThrows(IllegalArgumentException.class, () -> Money.quantityOf(Float.NaN));
+    }
+}
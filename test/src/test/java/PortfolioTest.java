@@ -0,0 +1,73 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Changes to a portfolio's assets and its running totals.
+ */
+class PortfolioTest {
+    private static Asset asset(String name, long quantityUnits, long priceUnits) {
+        return new Asset.AssetBuilder()
+                .SetName(name)
+                .SetQuantityUnits(quantityUnits)
+                .SetPurchasePriceUnits(priceUnits)
+                .SetPurchaseDate(new Date(0))
+                .SetAssetType("gold")
+                .SetIsHalal(true)
+                .SetAssetState()
+                .Build();
+    }
+
+    @Test
+    void anAssetThatOverflowsTheTotalsIsNotAdded() {
+        Portfolio p = new Portfolio();
+        p.addAsset(asset("gold", 10 * Money.QUANTITY_SCALE, 5 * Money.PRICE_SCALE));
+        Asset huge = asset("gold", Money.parse("1000000000000", Money.QUANTITY_SCALE), Money.parse("100000000", Money.PRICE_SCALE));
+        assertThrows(IllegalArgumentException.class, () -> p.addAsset(huge));
+        assertEquals(1, p.getAssetCount());
+        assertEquals(50 * Money.VALUE_SCALE, p.getTotalValueUnits());
+        assertEquals(1, p.searchForAssets("gold").size());
+    }
+
+    @Test
+    void anEditThatOverflowsTheTotalsLeavesTheAssetUnchanged() {
+        Portfolio p = new Portfolio();
+        Asset gold = asset("gold", 10 * Money.QUANTITY_SCALE, 5 * Money.PRICE_SCALE);
+        p.addAsset(gold);
+        assertThrows(IllegalArgumentException.class,
+                () -> gold.updateAssetUnits("gold", Long.MAX_VALUE / 2, Long.MAX_VALUE / 2, "gold", true));
+        assertEquals(10 * Money.QUANTITY_SCALE, gold.getQuantityUnits());
+        assertEquals(50 * Money.VALUE_SCALE, p.getTotalValueUnits());
+    }
+
+    @Test
+    void removalsKeepTheOrderOfTheRest() {
+        Portfolio p = new Portfolio();
+        Asset[] lots = new Asset[100];
+        for (int i = 0; i < lots.length; i++) {
+            lots[i] = asset(i % 2 == 0 ? "gold" : "silver", Money.QUANTITY_SCALE, (i + 1) * Money.PRICE_SCALE);
+            p.addAsset(lots[i]);
+        }
+        for (int i = 0; i < lots.length; i += 3) {
+            assertEquals(true, p.removeAsset(lots[i]));
+        }
+        assertEquals(false, p.removeAsset(lots[0]));
+        int n = 0;
+        long total = 0;
+        for (int i = 0; i < lots.length; i++) {
+            if (i % 3 != 0) {
+                assertSame(lots[i], p.get_asset(n++));
+                total += (i + 1) * Money.VALUE_SCALE;
+            }
+        }
+        assertEquals(n, p.getAssetCount());
+        assertEquals(total, p.getTotalValueUnits());
+        assertEquals(true, p.verifyTotals());
+        assertSame(lots[2], p.searchForAsset("gold"));
+        assertEquals(33, p.searchForAssets("gold").size());
+    }
+}
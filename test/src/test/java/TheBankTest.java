@@ -0,0 +1,59 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The account registry, the owner lookup metric and the expiry sweep.
+ */
+class TheBankTest {
+    private static final long NOW = 1_760_000_000_000L;
+
+    @Test
+    void registeredAccountsAreReadOnly() {
+        TheBank bank = new TheBank();
+        BankAccount account = account("1111222233334444", 10, "owner");
+        bank.addBankAccount(account);
+        List<BankAccount> accounts = bank.getBankAccounts();
+        assertEquals(List.of(account), accounts);
+        assertThrows(UnsupportedOperationException.class, () -> accounts.add(account));
+    }
+
+    @Test
+    void ownerLookupsAreCounted() {
+        TheBank bank = new TheBank();
+        bank.addBankAccount(account("1111222233334444", 10, "owner"));
+        Metrics.Counter lookups = Metrics.counter("bank.lookups");
+        Metrics.Counter misses = Metrics.counter("bank.lookup_misses");
+        long lookupsBefore = lookups.get(), missesBefore = misses.get();
+        bank.findAccountsByOwner("owner");
+        bank.findAccountsByOwner("nobody");
+        assertEquals(2, lookups.get() - lookupsBefore);
+        assertEquals(1, misses.get() - missesBefore);
+    }
+
+    @Test
+    void aCardMovedBackIntoTheWindowTwiceIsReportedOnce() {
+        TheBank bank = new TheBank();
+        BankAccount account = account("1111222233334444", 40, "owner");
+        bank.addBankAccount(account);
+        assertEquals(List.of(), bank.sweepExpiries(NOW, 30));
+        account.setExpiryDate(new Date(NOW + TimeUnit.DAYS.toMillis(5)));
+        account.setExpiryDate(new Date(NOW + TimeUnit.DAYS.toMillis(6)));
+        assertEquals(List.of(account), bank.sweepExpiries(NOW + 1, 30));
+    }
+
+    /**
+     * @param card  The card number.
+     * @param days  Days from now to the expiry date.
+     * @param owner The owner's id.
+     * @return A new account.
+     */
+    private static BankAccount account(String card, int days, String owner) {
+        return new BankAccount(card, "Holder Name", new Date(NOW + TimeUnit.DAYS.toMillis(days)), owner);
+    }
+}